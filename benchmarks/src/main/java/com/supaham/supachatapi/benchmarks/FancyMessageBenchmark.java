@@ -0,0 +1,93 @@
+package com.supaham.supachatapi.benchmarks;
+
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.fanciful.MessagePart;
+import com.supaham.supachatapi.util.NMSBridge;
+import org.bukkit.ChatColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building {@link FancyMessage}s and serializing them to JSON.
+ * <p/>
+ * {@link #toJSONStringCold()} builds a new message before serializing it, subtract {@link #build()} from it to get
+ * the cost of a cold serialization. {@link #toJSONStringPooled()} does the same with the thread's
+ * {@link FancyMessage#pooled()} message. {@link #toJSONStringOnePartChanged()} changes the text of one part of a
+ * serialized message, like a counter in a chat line that is updated every second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsupachatapi.nms.version=vbench")
+public class FancyMessageBenchmark {
+
+    private FancyMessage cached;
+    private String json;
+    private FancyMessage counted;
+    private MessagePart counter;
+    private int count;
+
+    @Setup
+    public void setup() {
+        cached = build();
+        json = cached.toJSONString();
+        counted = build();
+        counter = counted.getMessageParts().get(4);
+        counted.toJSONString();
+    }
+
+    @Benchmark
+    public FancyMessage build() {
+        return build(new FancyMessage("[Shop] "));
+    }
+
+    @Benchmark
+    public String toJSONStringCold() {
+        return build().toJSONString();
+    }
+
+    @Benchmark
+    public String toJSONStringPooled() {
+        return build(FancyMessage.pooled().text("[Shop] ")).toJSONString();
+    }
+
+    @Benchmark
+    public String toJSONStringCached() {
+        return cached.toJSONString();
+    }
+
+    @Benchmark
+    public String toJSONStringOnePartChanged() {
+        counter.setText("$" + (count++ & 1023) + ".00");
+        return counted.toJSONString();
+    }
+
+    @Benchmark
+    public Object createChatPacket() {
+        return NMSBridge.createChatPacket(json);
+    }
+
+    private static FancyMessage build(FancyMessage fancyMessage) {
+        return fancyMessage.color(ChatColor.GOLD)
+                .then("You bought ").color(ChatColor.GREEN)
+                .then("3x Diamond").color(ChatColor.WHITE).style(ChatColor.BOLD)
+                .tooltip("Diamond", "A shiny gem.", "", "Sold by Notch")
+                .then(" for ").color(ChatColor.GREEN)
+                .then("$150.00").color(ChatColor.YELLOW).command("/balance")
+                .then(". ").color(ChatColor.GREEN)
+                .then("[Store]").color(ChatColor.AQUA).style(ChatColor.UNDERLINE)
+                .link("https://store.example.com/?ref=chat");
+    }
+}
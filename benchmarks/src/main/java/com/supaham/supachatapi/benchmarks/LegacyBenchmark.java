@@ -0,0 +1,55 @@
+package com.supaham.supachatapi.benchmarks;
+
+import com.supaham.supachatapi.SafeFancyMessage;
+import com.supaham.supachatapi.SupaChatAPI;
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting legacy, section sign colored Strings into {@link FancyMessage}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsupachatapi.nms.version=vbench")
+public class LegacyBenchmark {
+
+    @Param({"short", "lore"})
+    public String input;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Messages.legacy(input);
+    }
+
+    @Benchmark
+    public FancyMessage stringToFancyMessage() {
+        return SupaChatAPI.stringToFancyMessage(source);
+    }
+
+    @Benchmark
+    public FancyMessage convert() {
+        return SafeFancyMessage.convert(source);
+    }
+
+    @Benchmark
+    public String stringToJSONString() {
+        return SupaChatAPI.stringToFancyMessage(source).toJSONString();
+    }
+}
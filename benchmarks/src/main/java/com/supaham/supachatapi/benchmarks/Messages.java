@@ -0,0 +1,93 @@
+package com.supaham.supachatapi.benchmarks;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Realistic inputs shared by the benchmarks.
+ */
+public final class Messages {
+
+    /**
+     * A short, colored shop notification.
+     */
+    public static final String SHORT_LEGACY = ChatColor.GOLD + "[Shop] " + ChatColor.GREEN + "You bought "
+                                              + ChatColor.WHITE + "3x Diamond " + ChatColor.GREEN + "for "
+                                              + ChatColor.YELLOW + "$150.00" + ChatColor.GREEN + ".";
+
+    /**
+     * Long item lore with several URLs and color changes.
+     */
+    public static final String LORE_LEGACY;
+
+    /**
+     * The XML equivalent of {@link #SHORT_LEGACY}.
+     */
+    public static final String SHORT_XML = "<color id=\"gold\">[Shop] </color><color id=\"green\">You bought "
+                                           + "<color id=\"white\">3x Diamond </color>for "
+                                           + "<color id=\"yellow\">$150.00</color>.</color>";
+
+    /**
+     * Long lore with links, hover events and styles.
+     */
+    public static final String LORE_XML;
+
+    /**
+     * Deeply nested XML, 16 elements deep.
+     */
+    public static final String NESTED_XML;
+
+    static {
+        StringBuilder legacy = new StringBuilder();
+        StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            legacy.append(ChatColor.GRAY).append("Line ").append(i).append(": visit ")
+                    .append("https://store.example.com/ranks/").append(i).append("?ref=lore for ")
+                    .append(ChatColor.BOLD).append("VIP").append(ChatColor.RESET).append(ChatColor.GRAY)
+                    .append(" perks, or vote at http://vote.example.com/site/").append(i).append("!\n");
+            xml.append("<color id=\"gray\">Line ").append(i).append(": visit <a href=\"https://store.example.com/ranks/")
+                    .append(i).append("?ref=lore\" onHover=\"show_text('Open the store')\">the store</a> for ")
+                    .append("<b>VIP</b> perks, or <u onClick=\"run_command('/vote ").append(i)
+                    .append("')\">vote</u>!</color>\n");
+        }
+        LORE_LEGACY = legacy.toString();
+        LORE_XML = xml.toString();
+
+        String[] tags = {"b", "i", "u", "s", "span"};
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            nested.append('<').append(tags[i % tags.length]).append(">level ").append(i).append(' ');
+        }
+        for (int i = 15; i >= 0; i--) {
+            nested.append("</").append(tags[i % tags.length]).append('>');
+        }
+        NESTED_XML = nested.toString();
+    }
+
+    private Messages() {
+    }
+
+    /**
+     * Gets the XML input of the given name.
+     *
+     * @param name one of short, lore or nested
+     * @return the XML input
+     */
+    public static String xml(String name) {
+        if (name.equals("short")) return SHORT_XML;
+        if (name.equals("lore")) return LORE_XML;
+        if (name.equals("nested")) return NESTED_XML;
+        throw new IllegalArgumentException("Unknown input " + name);
+    }
+
+    /**
+     * Gets the legacy, section sign colored input of the given name.
+     *
+     * @param name one of short or lore
+     * @return the legacy input
+     */
+    public static String legacy(String name) {
+        if (name.equals("short")) return SHORT_LEGACY;
+        if (name.equals("lore")) return LORE_LEGACY;
+        throw new IllegalArgumentException("Unknown input " + name);
+    }
+}
@@ -0,0 +1,67 @@
+package com.supaham.supachatapi.benchmarks;
+
+import com.supaham.supachatapi.Parsers;
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.xml.XmlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing XML markup into {@link FancyMessage}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsupachatapi.nms.version=vbench")
+public class ParserBenchmark {
+
+    private static final String TEMPLATE = "<color id=\"gold\">%s</color> has <b>%s</b> coins. "
+                                           + "<a href=\"http://example.com/\" onHover=\"show_text('Balance of %1$s')\">"
+                                           + "Details</a>";
+
+    @Param({"short", "lore", "nested"})
+    public String input;
+
+    private String source;
+    private XmlParser coldParser;
+
+    @Setup
+    public void setup() {
+        source = Messages.xml(input);
+        coldParser = new XmlParser(1);
+    }
+
+    @Benchmark
+    public FancyMessage xmlCached() throws Exception {
+        return Parsers.XML.parse(source);
+    }
+
+    @Benchmark
+    public FancyMessage xmlCold() throws Exception {
+        coldParser.clearCache();
+        return coldParser.parse(source);
+    }
+
+    @Benchmark
+    public FancyMessage streamingXml() throws Exception {
+        return Parsers.STREAMING_XML.parse(source);
+    }
+
+    @Benchmark
+    public String templateToJson() throws Exception {
+        return Parsers.STREAMING_XML.parse(TEMPLATE, "Notch", 250).toJSONString();
+    }
+}
@@ -0,0 +1,11 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS achievement.
+ */
+public class Achievement extends Statistic {
+
+    public Achievement(String name) {
+        super(name);
+    }
+}
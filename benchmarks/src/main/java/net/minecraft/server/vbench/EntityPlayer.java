@@ -0,0 +1,9 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS player entity.
+ */
+public class EntityPlayer {
+
+    public PlayerConnection playerConnection = new PlayerConnection();
+}
@@ -0,0 +1,7 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS chat component interface.
+ */
+public interface IChatBaseComponent {
+}
@@ -0,0 +1,24 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS item stack.
+ */
+public class ItemStack {
+
+    private final int id;
+    private final int count;
+    private final int damage;
+
+    public ItemStack(int id, int count, int damage) {
+        this.id = id;
+        this.count = count;
+        this.damage = damage;
+    }
+
+    public NBTTagCompound save(NBTTagCompound compound) {
+        compound.set("id", id + "s");
+        compound.set("Count", count + "b");
+        compound.set("Damage", damage + "s");
+        return compound;
+    }
+}
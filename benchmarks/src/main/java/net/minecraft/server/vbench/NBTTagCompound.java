@@ -0,0 +1,26 @@
+package net.minecraft.server.vbench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stub of the NMS NBT compound.
+ */
+public class NBTTagCompound {
+
+    private final Map<String, Object> map = new LinkedHashMap<String, Object>();
+
+    public void set(String key, Object value) {
+        map.put(key, value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (builder.length() > 1) builder.append(',');
+            builder.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return builder.append('}').toString();
+    }
+}
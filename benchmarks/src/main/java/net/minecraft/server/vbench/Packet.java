@@ -0,0 +1,7 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS packet base class.
+ */
+public abstract class Packet {
+}
@@ -0,0 +1,17 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS chat packet.
+ */
+public class PacketPlayOutChat extends Packet {
+
+    private final IChatBaseComponent component;
+
+    public PacketPlayOutChat(IChatBaseComponent component) {
+        this.component = component;
+    }
+
+    public IChatBaseComponent getComponent() {
+        return component;
+    }
+}
@@ -0,0 +1,17 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS player connection. Counts the packets sent through it.
+ */
+public class PlayerConnection {
+
+    private long sent;
+
+    public void sendPacket(Packet packet) {
+        sent++;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+}
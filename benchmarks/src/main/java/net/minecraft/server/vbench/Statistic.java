@@ -0,0 +1,13 @@
+package net.minecraft.server.vbench;
+
+/**
+ * Stub of the NMS statistic.
+ */
+public class Statistic {
+
+    public final String name;
+
+    public Statistic(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,28 @@
+package org.bukkit.craftbukkit.vbench;
+
+import net.minecraft.server.vbench.Achievement;
+import net.minecraft.server.vbench.Statistic;
+import org.bukkit.Material;
+import org.bukkit.entity.EntityType;
+
+/**
+ * Stub of the OBC statistic converter.
+ */
+public class CraftStatistic {
+
+    public static Achievement getNMSAchievement(org.bukkit.Achievement achievement) {
+        return new Achievement("achievement." + achievement.name().toLowerCase());
+    }
+
+    public static Statistic getNMSStatistic(org.bukkit.Statistic statistic) {
+        return new Statistic("stat." + statistic.name().toLowerCase());
+    }
+
+    public static Statistic getMaterialStatistic(org.bukkit.Statistic statistic, Material material) {
+        return new Statistic("stat." + statistic.name().toLowerCase() + "." + material.getId());
+    }
+
+    public static Statistic getEntityStatistic(org.bukkit.Statistic statistic, EntityType entity) {
+        return new Statistic("stat." + statistic.name().toLowerCase() + "." + entity.getName());
+    }
+}
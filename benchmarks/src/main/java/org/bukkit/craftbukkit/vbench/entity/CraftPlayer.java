@@ -0,0 +1,15 @@
+package org.bukkit.craftbukkit.vbench.entity;
+
+import net.minecraft.server.vbench.EntityPlayer;
+
+/**
+ * Stub of the OBC player. Only provides the handle that NMSBridge resolves.
+ */
+public class CraftPlayer {
+
+    private final EntityPlayer handle = new EntityPlayer();
+
+    public EntityPlayer getHandle() {
+        return handle;
+    }
+}
@@ -0,0 +1,13 @@
+package org.bukkit.craftbukkit.vbench.inventory;
+
+import net.minecraft.server.vbench.ItemStack;
+
+/**
+ * Stub of the OBC item stack converter.
+ */
+public class CraftItemStack {
+
+    public static ItemStack asNMSCopy(org.bukkit.inventory.ItemStack item) {
+        return new ItemStack(item.getTypeId(), item.getAmount(), item.getDurability());
+    }
+}
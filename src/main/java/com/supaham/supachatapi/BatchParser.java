@@ -0,0 +1,54 @@
+package com.supaham.supachatapi;
+
+import com.supaham.supachatapi.fanciful.BroadcastResult;
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a {@link Parser} that can parse a source once and render it for many recipients, each with their own
+ * params.
+ */
+public interface BatchParser extends Parser {
+
+    /**
+     * Parses a {@link String} once and renders it for many recipients, each with their own params.
+     *
+     * @param source     source to parse
+     * @param recipients players to render the {@code source} for
+     * @param params     params of every recipient
+     * @return the NMS PacketPlayOutChat of every recipient, in iteration order
+     * @see FancyMessage#broadcast(Map)
+     */
+    public Map<Player, List<Object>> renderBatch(String source, Iterable<? extends Player> recipients,
+                                                 RecipientParams params) throws Exception;
+
+    /**
+     * Parses a {@link String} once, renders it for many recipients, each with their own params, and sends it to them.
+     *
+     * @param source     source to parse
+     * @param recipients players to send the {@code source} to
+     * @param params     params of every recipient
+     * @return the result of the broadcast
+     */
+    public BroadcastResult sendBatch(String source, Iterable<? extends Player> recipients, RecipientParams params)
+            throws Exception;
+
+    /**
+     * Represents the params of every recipient of a batch.
+     *
+     * @see #renderBatch(String, Iterable, RecipientParams)
+     */
+    public interface RecipientParams {
+
+        /**
+         * Gets the params to replace for a recipient.
+         *
+         * @param recipient recipient to get the params of
+         * @return params to replace
+         */
+        Object[] getParams(Player recipient);
+    }
+}
@@ -0,0 +1,323 @@
+package com.supaham.supachatapi;
+
+import com.supaham.supachatapi.fanciful.BroadcastResult;
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.util.NMSBridge;
+import com.supaham.supachatapi.xml.StreamingXmlParser;
+import org.apache.commons.lang.Validate;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Represents the sources of messages in many locales, looked up by key.
+ * <p/>
+ * A key is resolved for a locale by trying the locale, then its language, then the default locale and its language, so
+ * {@code de_AT} falls back to {@code de}, then to e.g. {@code en_US} and {@code en}. Locales are compared ignoring
+ * case. Resolved sources are cached per locale that has sources, keys that do not resolve are not cached.
+ * <p/>
+ * Every catalog compiles its sources with its own parser, whose bounded cache holds the compiled templates of this
+ * catalog only. Size it to the amount of sources, so that templates are not evicted by other messages.
+ * <p/>
+ * Messages for many players are rendered once per distinct source: recipients are grouped by the source their locale
+ * resolves to, and each group is rendered with a single
+ * {@link BatchParser#renderBatch(String, Iterable, BatchParser.RecipientParams)}. All methods are thread-safe, but
+ * sources should be added before the catalog is used, as adding a source clears the resolved sources of every locale.
+ */
+public class MessageCatalog {
+
+    /**
+     * The default amount of compiled templates a catalog keeps cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private final BatchParser parser;
+    private final String defaultLocale;
+    private final ConcurrentMap<String, Map<String, String>> sources =
+            new ConcurrentHashMap<String, Map<String, String>>();
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> resolved =
+            new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+    /**
+     * Constructs a new MessageCatalog that compiles its sources with a {@link StreamingXmlParser} keeping up to
+     * {@link #DEFAULT_CACHE_SIZE} templates.
+     *
+     * @param defaultLocale locale that every locale falls back to, such as {@code en_US}
+     */
+    public MessageCatalog(String defaultLocale) {
+        this(defaultLocale, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a new MessageCatalog that compiles its sources with a {@link StreamingXmlParser}.
+     *
+     * @param defaultLocale locale that every locale falls back to, such as {@code en_US}
+     * @param cacheSize     maximum amount of compiled templates to keep cached
+     */
+    public MessageCatalog(String defaultLocale, int cacheSize) {
+        this(new StreamingXmlParser(cacheSize), defaultLocale);
+    }
+
+    /**
+     * Constructs a new MessageCatalog. The parser must be dedicated to this catalog, and its cache sized to hold the
+     * catalog's templates.
+     *
+     * @param parser        parser to render sources with, not one of the shared {@link Parsers}
+     * @param defaultLocale locale that every locale falls back to, such as {@code en_US}
+     */
+    public MessageCatalog(BatchParser parser, String defaultLocale) {
+        Validate.notNull(parser, "parser cannot be null.");
+        Validate.isTrue(parser != Parsers.XML && parser != Parsers.STREAMING_XML,
+                        "parser must be dedicated to the catalog, not a shared instance of Parsers.");
+        Validate.notNull(defaultLocale, "defaultLocale cannot be null.");
+        this.parser = parser;
+        this.defaultLocale = normalize(defaultLocale);
+    }
+
+    /**
+     * Adds the source of a key in a locale, replacing any previous source of the key in the locale.
+     *
+     * @param key    key of the message
+     * @param locale locale of the source
+     * @param source source of the message
+     */
+    public void add(String key, String locale, String source) {
+        Validate.notNull(key, "key cannot be null.");
+        Validate.notNull(locale, "locale cannot be null.");
+        Validate.notNull(source, "source cannot be null.");
+        locale = normalize(locale);
+        Map<String, String> localeSources = sources.get(locale);
+        if (localeSources == null) {
+            sources.putIfAbsent(locale, new ConcurrentHashMap<String, String>());
+            localeSources = sources.get(locale);
+        }
+        localeSources.put(key, source);
+        resolved.clear();
+    }
+
+    /**
+     * Adds the sources of many keys in a locale.
+     *
+     * @param locale  locale of the sources
+     * @param sources map of keys to their sources
+     */
+    public void addAll(String locale, Map<String, String> sources) {
+        Validate.notNull(sources, "sources cannot be null.");
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            add(entry.getKey(), locale, entry.getValue());
+        }
+    }
+
+    /**
+     * Gets the source a key resolves to in a locale.
+     *
+     * @param key    key of the message
+     * @param locale locale to resolve the key in
+     * @return the source, or null if the key is not found in the locale or any of its fallbacks
+     */
+    public String getSource(String key, String locale) {
+        Validate.notNull(key, "key cannot be null.");
+        Validate.notNull(locale, "locale cannot be null.");
+        // Locales without sources resolve like the first of their fallbacks that has sources, so the resolved sources
+        // are only cached for locales that have sources, however many locales clients send.
+        List<String> fallbacks = getFallbacks(locale);
+        String cached = defaultLocale;
+        for (String fallback : fallbacks) {
+            if (sources.containsKey(fallback)) {
+                cached = fallback;
+                break;
+            }
+        }
+        ConcurrentMap<String, String> localeResolved = resolved.get(cached);
+        if (localeResolved == null) {
+            resolved.putIfAbsent(cached, new ConcurrentHashMap<String, String>());
+            localeResolved = resolved.get(cached);
+        }
+        String source = localeResolved.get(key);
+        if (source == null) {
+            for (String fallback : fallbacks) {
+                Map<String, String> localeSources = sources.get(fallback);
+                source = localeSources == null ? null : localeSources.get(key);
+                if (source != null) {
+                    localeResolved.put(key, source); // Keys that do not resolve are not cached.
+                    break;
+                }
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Gets the locales a locale falls back to, in order, starting with the locale itself.
+     *
+     * @param locale locale to get the fallbacks of
+     * @return list of locales
+     */
+    public List<String> getFallbacks(String locale) {
+        Validate.notNull(locale, "locale cannot be null.");
+        List<String> fallbacks = new ArrayList<String>(4);
+        addWithLanguage(fallbacks, normalize(locale));
+        addWithLanguage(fallbacks, defaultLocale);
+        return fallbacks;
+    }
+
+    /**
+     * Gets the locale of a {@link Player}, or the default locale if the server does not know it.
+     *
+     * @param player player to get the locale of
+     * @return the player's locale
+     */
+    public String getLocale(Player player) {
+        String locale = NMSBridge.getLocale(player);
+        return locale == null ? defaultLocale : normalize(locale);
+    }
+
+    /**
+     * Parses the message of a key in a locale.
+     *
+     * @param key    key of the message
+     * @param locale locale to resolve the key in
+     * @param params params to replace
+     * @return the parsed message
+     * @throws IllegalArgumentException thrown if the key is not found in the locale or any of its fallbacks
+     * @throws Exception                thrown if the source could not be parsed
+     */
+    public FancyMessage parse(String key, String locale, Object... params) throws Exception {
+        return parser.parse(requireSource(key, locale), params);
+    }
+
+    /**
+     * Parses the message of a key in the locale of a {@link Player}.
+     *
+     * @param key    key of the message
+     * @param player player whose locale to resolve the key in
+     * @param params params to replace
+     * @return the parsed message
+     * @throws IllegalArgumentException thrown if the key is not found in the player's locale or any of its fallbacks
+     * @throws Exception                thrown if the source could not be parsed
+     */
+    public FancyMessage parse(String key, Player player, Object... params) throws Exception {
+        return parse(key, getLocale(player), params);
+    }
+
+    /**
+     * Renders the message of a key for many recipients, each in their own locale and with their own params. The
+     * message is rendered once for every distinct source the recipients' locales resolve to.
+     *
+     * @param key        key of the message
+     * @param recipients players to render the message for
+     * @param params     params of every recipient
+     * @return the NMS PacketPlayOutChat of every recipient, grouped by source
+     * @throws IllegalArgumentException thrown if the key is not found in a recipient's locale or any of its fallbacks
+     * @throws Exception                thrown if a source could not be parsed
+     */
+    public Map<Player, List<Object>> renderBatch(String key, Iterable<? extends Player> recipients,
+                                                 BatchParser.RecipientParams params) throws Exception {
+        Validate.notNull(recipients, "recipients cannot be null.");
+        Validate.notNull(params, "params cannot be null.");
+        // Sources are compared by identity, as every locale that resolves to a source shares the same instance.
+        Map<String, List<Player>> groups = new IdentityHashMap<String, List<Player>>();
+        for (Player recipient : recipients) {
+            String source = requireSource(key, getLocale(recipient));
+            List<Player> group = groups.get(source);
+            if (group == null) {
+                groups.put(source, group = new ArrayList<Player>());
+            }
+            group.add(recipient);
+        }
+        Map<Player, List<Object>> packets = new LinkedHashMap<Player, List<Object>>();
+        for (Map.Entry<String, List<Player>> group : groups.entrySet()) {
+            packets.putAll(parser.renderBatch(group.getKey(), group.getValue(), params));
+        }
+        return packets;
+    }
+
+    /**
+     * Renders the message of a key for many recipients, each in their own locale and with their own params, and sends
+     * it to them.
+     *
+     * @param key        key of the message
+     * @param recipients players to send the message to
+     * @param params     params of every recipient
+     * @return the result of the broadcast
+     * @throws IllegalArgumentException thrown if the key is not found in a recipient's locale or any of its fallbacks
+     * @throws Exception                thrown if a source could not be parsed
+     * @see #renderBatch(String, Iterable, BatchParser.RecipientParams)
+     */
+    public BroadcastResult sendBatch(String key, Iterable<? extends Player> recipients,
+                                     BatchParser.RecipientParams params) throws Exception {
+        return FancyMessage.broadcast(renderBatch(key, recipients, params));
+    }
+
+    /**
+     * Renders the message of a key with the same params for many recipients, each in their own locale, and sends it to
+     * them. The message is rendered once for every distinct source the recipients' locales resolve to.
+     *
+     * @param key        key of the message
+     * @param recipients players to send the message to
+     * @param params     params to replace
+     * @return the result of the broadcast
+     * @throws IllegalArgumentException thrown if the key is not found in a recipient's locale or any of its fallbacks
+     * @throws Exception                thrown if a source could not be parsed
+     */
+    public BroadcastResult broadcast(String key, Iterable<? extends Player> recipients, final Object... params)
+            throws Exception {
+        return sendBatch(key, recipients, new BatchParser.RecipientParams() {
+            @Override
+            public Object[] getParams(Player recipient) {
+                return params;
+            }
+        });
+    }
+
+    /**
+     * Gets the locales that have sources.
+     *
+     * @return unmodifiable list of locales, in lower case
+     */
+    public List<String> getLocales() {
+        return Collections.unmodifiableList(new ArrayList<String>(sources.keySet()));
+    }
+
+    /**
+     * Gets the default locale of this catalog.
+     *
+     * @return the default locale, in lower case
+     */
+    public String getDefaultLocale() {
+        return defaultLocale;
+    }
+
+    private String requireSource(String key, String locale) {
+        String source = getSource(key, locale);
+        if (source == null) {
+            throw new IllegalArgumentException("No message " + key + " in " + locale + " or its fallbacks.");
+        }
+        return source;
+    }
+
+    private static void addWithLanguage(List<String> fallbacks, String locale) {
+        if (!fallbacks.contains(locale)) {
+            fallbacks.add(locale);
+        }
+        int separator = locale.indexOf('_');
+        if (separator > 0) {
+            String language = locale.substring(0, separator);
+            if (!fallbacks.contains(language)) {
+                fallbacks.add(language);
+            }
+        }
+    }
+
+    private static String normalize(String locale) {
+        return locale.replace('-', '_').toLowerCase(Locale.ENGLISH);
+    }
+}
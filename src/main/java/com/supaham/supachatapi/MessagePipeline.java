@@ -0,0 +1,347 @@
+package com.supaham.supachatapi;
+
+import com.supaham.supachatapi.fanciful.BroadcastResult;
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.fanciful.FrozenMessage;
+import org.apache.commons.lang.Validate;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a pipeline that renders and serializes messages off the main thread and sends them on the main thread.
+ * <p/>
+ * Messages are rendered, serialized to JSON and turned into chat packets by a bounded pool of worker threads. The
+ * finished packets are queued and sent in one batch every tick by a task on the Bukkit scheduler. Every submitted
+ * message gets a {@link Future} that completes once it has been sent, and an optional {@link Callback} that is called on
+ * the main thread.
+ *
+ * @see SupaChatAPI#getPipeline()
+ */
+public class MessagePipeline {
+
+    /**
+     * The default amount of messages that may wait to be rendered before new messages are rejected.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final Callable<BroadcastResult> NOTHING = new Callable<BroadcastResult>() {
+        @Override
+        public BroadcastResult call() {
+            return null;
+        }
+    };
+
+    private final Plugin plugin;
+    private final ThreadPoolExecutor executor;
+    private final Queue<Delivery> rendered = new ConcurrentLinkedQueue<Delivery>();
+    private final Set<Delivery> pending = Collections.newSetFromMap(new ConcurrentHashMap<Delivery, Boolean>());
+    private BukkitTask flushTask;
+
+    /**
+     * Constructs a new MessagePipeline with one worker thread per two available processors, up to four, and a queue
+     * capacity of {@link #DEFAULT_QUEUE_CAPACITY}.
+     *
+     * @param plugin plugin to schedule the flush task with
+     */
+    public MessagePipeline(Plugin plugin) {
+        this(plugin, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructs a new MessagePipeline.
+     *
+     * @param plugin        plugin to schedule the flush task with
+     * @param threads       amount of worker threads, must be larger than 0
+     * @param queueCapacity amount of messages that may wait to be rendered, must be larger than 0
+     */
+    public MessagePipeline(Plugin plugin, int threads, int queueCapacity) {
+        Validate.notNull(plugin, "plugin cannot be null.");
+        Validate.isTrue(threads > 0, "threads must be larger than 0.");
+        Validate.isTrue(queueCapacity > 0, "queueCapacity must be larger than 0.");
+        this.plugin = plugin;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                               new ArrayBlockingQueue<Runnable>(queueCapacity),
+                                               new WorkerThreadFactory(plugin.getName()));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts flushing rendered messages every tick. This must be called on the main thread.
+     *
+     * @throws IllegalStateException thrown if this pipeline was already started or has been shut down
+     */
+    public synchronized void start() throws IllegalStateException {
+        if (flushTask != null) {
+            throw new IllegalStateException("pipeline was already started.");
+        }
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("pipeline has been shut down.");
+        }
+        flushTask = plugin.getServer().getScheduler().runTaskTimer(plugin, new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, 1, 1);
+    }
+
+    /**
+     * Submits a message to be rendered on a worker thread and sent to {@link Player}s on the main thread. The
+     * renderer must not use any part of the Bukkit API that is not thread-safe.
+     *
+     * @param renderer renderer that creates the message, called on a worker thread
+     * @param players  players to send the message to, copied before this method returns
+     * @param callback callback to call on the main thread once the message was sent, nullable
+     * @return a future of the result of sending the message
+     * @throws RejectedExecutionException thrown if too many messages are waiting to be rendered, or this pipeline has
+     *                                    been shut down
+     */
+    public Future<BroadcastResult> submit(Callable<FancyMessage> renderer, Iterable<? extends Player> players,
+                                          Callback callback) throws RejectedExecutionException {
+        Validate.notNull(renderer, "renderer cannot be null.");
+        Validate.notNull(players, "players cannot be null.");
+        List<Player> recipients = new ArrayList<Player>();
+        for (Player player : players) {
+            recipients.add(player);
+        }
+        Delivery delivery = new Delivery(renderer, recipients, callback);
+        pending.add(delivery);
+        try {
+            executor.execute(delivery.render);
+        } catch (RejectedExecutionException e) {
+            pending.remove(delivery);
+            throw e;
+        }
+        return delivery;
+    }
+
+    /**
+     * Submits a message to be rendered on a worker thread and sent to {@link Player}s on the main thread.
+     *
+     * @param renderer renderer that creates the message, called on a worker thread
+     * @param players  players to send the message to, copied before this method returns
+     * @return a future of the result of sending the message
+     * @throws RejectedExecutionException thrown if too many messages are waiting to be rendered, or this pipeline has
+     *                                    been shut down
+     * @see #submit(Callable, Iterable, Callback)
+     */
+    public Future<BroadcastResult> submit(Callable<FancyMessage> renderer, Iterable<? extends Player> players)
+            throws RejectedExecutionException {
+        return submit(renderer, players, null);
+    }
+
+    /**
+     * Submits a source to be parsed on a worker thread and sent to {@link Player}s on the main thread.
+     *
+     * @param parser   parser to parse the source with
+     * @param source   source to parse
+     * @param players  players to send the message to, copied before this method returns
+     * @param callback callback to call on the main thread once the message was sent, nullable
+     * @param params   params to replace
+     * @return a future of the result of sending the message
+     * @throws RejectedExecutionException thrown if too many messages are waiting to be rendered, or this pipeline has
+     *                                    been shut down
+     * @see #submit(Callable, Iterable, Callback)
+     */
+    public Future<BroadcastResult> submit(final Parser parser, final String source,
+                                          Iterable<? extends Player> players, Callback callback,
+                                          final Object... params) throws RejectedExecutionException {
+        Validate.notNull(parser, "parser cannot be null.");
+        Validate.notNull(source, "source cannot be null.");
+        return submit(new Callable<FancyMessage>() {
+            @Override
+            public FancyMessage call() throws Exception {
+                return parser.parse(source, params);
+            }
+        }, players, callback);
+    }
+
+    /**
+     * Sends all messages that have finished rendering. This is called every tick once this pipeline is started, and
+     * must only be called on the main thread. An exception thrown by a {@link Callback} is not caught, the messages
+     * after it are sent by the next flush.
+     *
+     * @return the amount of messages that were flushed
+     */
+    public int flush() {
+        int flushed = 0;
+        Delivery delivery;
+        while ((delivery = rendered.poll()) != null) {
+            delivery.deliver();
+            flushed++;
+        }
+        return flushed;
+    }
+
+    /**
+     * Gets the amount of messages that are waiting to be rendered.
+     *
+     * @return amount of waiting messages
+     */
+    public int getPending() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Shuts this pipeline down. Messages that were already rendered are sent, messages that were not rendered yet are
+     * cancelled. Messages that are still being rendered after waiting a second for the workers are cancelled as well,
+     * so that every future completes and every callback is called. This must be called on the main thread.
+     */
+    public synchronized void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+        }
+        for (Runnable runnable : executor.shutdownNow()) {
+            ((Delivery.Render) runnable).cancel();
+        }
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        // A worker that is still rendering would queue its message after this final flush, so it is never sent.
+        for (Delivery delivery : new ArrayList<Delivery>(pending)) {
+            delivery.abandon();
+        }
+    }
+
+    /**
+     * Represents a callback of a message submitted to a {@link MessagePipeline}. Callbacks are called on the main
+     * thread.
+     */
+    public interface Callback {
+
+        /**
+         * Called once the message was sent.
+         *
+         * @param result the result of sending the message
+         */
+        void onSent(BroadcastResult result);
+
+        /**
+         * Called if the message could not be rendered or sent.
+         *
+         * @param cause the cause of the failure
+         */
+        void onFailure(Throwable cause);
+    }
+
+    /**
+     * Holds a single submitted message from the moment it is submitted until it is sent.
+     */
+    private final class Delivery extends FutureTask<BroadcastResult> {
+
+        private final Render render = new Render();
+        private final Callable<FancyMessage> renderer;
+        private final List<Player> players;
+        private final Callback callback;
+        private FrozenMessage message; // Published to the main thread through the rendered queue.
+        private Throwable failure;
+
+        private Delivery(Callable<FancyMessage> renderer, List<Player> players, Callback callback) {
+            super(NOTHING);
+            this.renderer = renderer;
+            this.players = players;
+            this.callback = callback;
+        }
+
+        private void deliver() {
+            if (!pending.remove(this) || isCancelled()) {
+                return; // Abandoned by shutdown, or cancelled through the future.
+            }
+            BroadcastResult result = null;
+            if (failure == null) {
+                try {
+                    result = message.broadcast(players);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                setException(failure);
+                if (callback != null) {
+                    callback.onFailure(failure);
+                }
+                return;
+            }
+            set(result);
+            if (callback != null) {
+                callback.onSent(result);
+            }
+        }
+
+        private void abandon() {
+            if (!pending.remove(this)) {
+                return;
+            }
+            cancel(false);
+            if (callback != null) {
+                callback.onFailure(new CancellationException("pipeline has been shut down."));
+            }
+        }
+
+        private final class Render implements Runnable {
+
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    FancyMessage fancyMessage = renderer.call();
+                    Validate.notNull(fancyMessage, "renderer returned null.");
+                    message = fancyMessage.freeze();
+                    message.getPackets();
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                rendered.add(Delivery.this);
+            }
+
+            private void cancel() {
+                failure = new CancellationException("pipeline has been shut down.");
+                rendered.add(Delivery.this);
+            }
+        }
+    }
+
+    /**
+     * Creates daemon worker threads named after the plugin.
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+        private final String name;
+
+        private WorkerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " Message Pipeline #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
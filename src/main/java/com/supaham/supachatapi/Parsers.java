@@ -1,5 +1,6 @@
 package com.supaham.supachatapi;
 
+import com.supaham.supachatapi.xml.StreamingXmlParser;
 import com.supaham.supachatapi.xml.XmlParser;
 
 /**
@@ -12,4 +13,9 @@ public class Parsers {
      */
     public static final XmlParser XML = new XmlParser();
 
+    /**
+     * Instance of {@link StreamingXmlParser}. Produces the same messages as {@link #XML} without depending on JAXB.
+     */
+    public static final StreamingXmlParser STREAMING_XML = new StreamingXmlParser();
+
 }
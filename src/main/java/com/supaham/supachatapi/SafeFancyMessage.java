@@ -1,87 +1,163 @@
 package com.supaham.supachatapi;
 
 import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.util.ChatMetrics;
+import org.apache.commons.lang.Validate;
 import org.bukkit.ChatColor;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
 * Represents a class that transforms a {@link String} into a {@link FancyMessage}. Useful for fixing multicolor lines.
+* <p/>
+* Messages are converted in a single pass without any regular expressions, in time linear to the length of the
+* message. The converter is stateless, so {@link #convert(String, FancyMessage)} may be called from any thread.
 */
 public class SafeFancyMessage {
-    private String message;
-    private FancyMessage fancyMessage;
-    private int currentIndex;
 
-    private final Pattern INCREMENTAL_PATTERN = Pattern.compile(
-            "(" + ChatColor.COLOR_CHAR +
-            "[0-9a-fk-or])|(\\n)|(?:(https?://[^ ][^ ]*?)(?=[\\.\\?!,;:]?(?:[ \\n]|$)))",
-            Pattern.CASE_INSENSITIVE
-    );
+    private static final ChatColor[] CODES = new ChatColor[128];
+
+    static {
+        for (ChatColor color : ChatColor.values()) {
+            char code = color.getChar();
+            CODES[Character.toLowerCase(code)] = color;
+            CODES[Character.toUpperCase(code)] = color;
+        }
+    }
 
+    /**
+     * Transforms a String into a {@link FancyMessage}.
+     *
+     * @param message      message to transform
+     * @param fancyMessage FancyMessage to append the transformed {@code message} to
+     * @deprecated use {@link #convert(String, FancyMessage)}, this class holds no state
+     */
+    @Deprecated
     public SafeFancyMessage(String message, FancyMessage fancyMessage) {
-        this.message = message;
-        this.fancyMessage = fancyMessage;
+        convert(message, fancyMessage);
+    }
 
-        Matcher matcher = INCREMENTAL_PATTERN.matcher(message);
-        String match;
-        while (matcher.find()) {
-            int group = 0;
-            while ((match = matcher.group(++group)) == null) {
-            }
-            appendMessage(matcher.start(group));
-            switch (group) {
-                case 1: // Color/format group
-                    ChatColor color = ChatColor.getByChar(match.charAt(1));
-                    if (color.equals(ChatColor.RESET)) {
-                        fancyMessage.then();
-                    } else if (color.isFormat()) {
-                        switch (color) {
-                            case BOLD:
-                                fancyMessage.style(ChatColor.BOLD);
-                                break;
-                            case ITALIC:
-                                fancyMessage.style(ChatColor.ITALIC);
-                                break;
-                            case STRIKETHROUGH:
-                                fancyMessage.style(ChatColor.STRIKETHROUGH);
-                                break;
-                            case UNDERLINE:
-                                fancyMessage.style(ChatColor.UNDERLINE);
-                                break;
-                            case MAGIC:
-                                fancyMessage.style(ChatColor.MAGIC);
-                                break;
-                            default:
-                                throw new UnsupportedOperationException("Unexpected ChatColor format " + color);
-                        }
-                    } else {
-                        fancyMessage.then().color(color);
-                    }
-                    break;
-                case 2: // New line
+    /**
+     * Transforms a String into a new {@link FancyMessage}.
+     *
+     * @param message message to transform
+     * @return a new FancyMessage containing the transformed {@code message}
+     */
+    public static FancyMessage convert(String message) {
+        FancyMessage fancyMessage = new FancyMessage();
+        convert(message, fancyMessage);
+        return fancyMessage;
+    }
+
+    /**
+     * Transforms a String into a {@link FancyMessage}. {@link ChatColor#COLOR_CHAR} codes become colors and styles,
+     * new lines start a new part and {@code http://} and {@code https://} URLs become links.
+     *
+     * @param message      message to transform
+     * @param fancyMessage FancyMessage to append the transformed {@code message} to
+     */
+    public static void convert(String message, FancyMessage fancyMessage) {
+        Validate.notNull(message, "message cannot be null.");
+        Validate.notNull(fancyMessage, "fancyMessage cannot be null.");
+        ChatMetrics metrics = ChatMetrics.getGlobal();
+        long start = metrics.start();
+        boolean converted = false;
+        try {
+            scan(message, fancyMessage);
+            converted = true;
+        } finally {
+            metrics.stop(ChatMetrics.Operation.CONVERT, start, !converted);
+        }
+    }
+
+    private static void scan(String message, FancyMessage fancyMessage) {
+        int length = message.length();
+        int currentIndex = 0;
+        int index = 0;
+        while (index < length) {
+            char c = message.charAt(index);
+            int end;
+            if (c == ChatColor.COLOR_CHAR && index + 1 < length && getColor(message.charAt(index + 1)) != null) {
+                end = index + 2;
+                appendMessage(fancyMessage, message, currentIndex, index);
+                ChatColor color = getColor(message.charAt(index + 1));
+                if (color == ChatColor.RESET) {
                     fancyMessage.then();
-                    break;
-                case 3: // URL
-                    appendMessage(matcher.end(group));
-                    fancyMessage.link(match);
+                } else if (color.isFormat()) {
+                    fancyMessage.style(color);
+                } else {
+                    fancyMessage.then().color(color);
+                }
+            } else if (c == '\n') {
+                end = index + 1;
+                appendMessage(fancyMessage, message, currentIndex, index);
+                fancyMessage.then();
+            } else if ((end = urlEnd(message, index)) > 0) {
+                appendMessage(fancyMessage, message, currentIndex, index);
+                appendMessage(fancyMessage, message, index, end);
+                fancyMessage.link(message.substring(index, end));
+            } else {
+                index++;
+                continue;
             }
-            currentIndex = matcher.end(group);
+            currentIndex = index = end;
         }
+        appendMessage(fancyMessage, message, currentIndex, length);
+    }
 
-        if (currentIndex < message.length()) {
-            appendMessage(message.length());
+    private static void appendMessage(FancyMessage fancyMessage, String message, int start, int end) {
+        if (start < end) {
+            fancyMessage.append(message.substring(start, end));
         }
     }
 
-    private void appendMessage(int index) {
-        if (index <= currentIndex) {
-            return;
+    private static ChatColor getColor(char code) {
+        return code < CODES.length ? CODES[code] : null;
+    }
+
+    /**
+     * Gets the end of the URL starting at an index, or -1 if there is no URL at that index. A URL is
+     * {@code http://} or {@code https://} followed by at least one character, and ends right before the first space,
+     * new line or end of the message, excluding one trailing punctuation mark.
+     */
+    private static int urlEnd(String message, int index) {
+        int length = message.length();
+        int start = index;
+        for (int i = 0; i < 4; i++, start++) {
+            // Compares ASCII letters case insensitively, like the pattern this replaced did.
+            if (start >= length || (message.charAt(start) | 0x20) != "http".charAt(i)) {
+                return -1;
+            }
+        }
+        if (start < length && (message.charAt(start) | 0x20) == 's') {
+            start++;
+        }
+        if (!message.startsWith("://", start) || (start += 3) >= length || message.charAt(start) == ' ') {
+            return -1;
+        }
+        for (int end = start + 1; ; end++) {
+            if (isUrlBoundary(message, end)
+                || (end < length && isPunctuation(message.charAt(end)) && isUrlBoundary(message, end + 1))) {
+                return end;
+            }
         }
+    }
+
+    private static boolean isUrlBoundary(String message, int index) {
+        int length = message.length();
+        if (index >= length) {
+            return true;
+        }
+        char c = message.charAt(index);
+        if (c == ' ' || c == '\n') {
+            return true;
+        }
+        // A line terminator at the very end of the message counts as the end of the message.
+        if (index == length - 2) {
+            return c == '\r' && message.charAt(index + 1) == '\n';
+        }
+        return index == length - 1 && (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029');
+    }
 
-        String message = this.message.substring(currentIndex, index);
-        this.currentIndex = index;
-        fancyMessage.append(message);
+    private static boolean isPunctuation(char c) {
+        return c == '.' || c == '?' || c == '!' || c == ',' || c == ';' || c == ':';
     }
 }
@@ -1,21 +1,112 @@
 package com.supaham.supachatapi;
 
 import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.fanciful.ItemTooltipCache;
+import com.supaham.supachatapi.fanciful.SizeStatistics;
+import com.supaham.supachatapi.fanciful.StatisticNames;
+import com.supaham.supachatapi.util.ChatMetrics;
 import org.apache.commons.lang.Validate;
 import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.logging.Level;
 
 /**
  * Main class for the SupaChatAPI plugin. The plugin is not required to be enabled the API to function.
  */
 public class SupaChatAPI extends JavaPlugin {
 
+    private static MessagePipeline pipeline;
+
     @Override
     public void onEnable() {
-        // Nothing to do here.
+        pipeline = new MessagePipeline(this);
+        pipeline.start();
+        try {
+            StatisticNames.load();
+        } catch (IllegalStateException e) {
+            getLogger().log(Level.WARNING, "Achievement and statistic tooltips are unavailable", e.getCause());
+        }
+    }
+
+    @Override
+    public void onDisable() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
+        }
+    }
+
+    /**
+     * Handles {@code /supachat}, which shows the {@link ChatMetrics}, and {@code /supachat reset}, which resets them.
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length > 1 || (args.length == 1 && !args[0].equalsIgnoreCase("reset"))) {
+            return false;
+        }
+        ChatMetrics metrics = ChatMetrics.getGlobal();
+        if (args.length == 1) {
+            metrics.reset();
+            SizeStatistics.getGlobal().reset();
+            sender.sendMessage(ChatColor.GREEN + "Chat metrics have been reset.");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "SupaChatAPI metrics" + (metrics.isEnabled() ? "" : " (disabled)"));
+        for (ChatMetrics.Operation operation : ChatMetrics.Operation.values()) {
+            sender.sendMessage(ChatColor.YELLOW + operation.name().toLowerCase() + ": " + ChatColor.WHITE
+                               + metrics.getCount(operation) + " ops, " + metrics.getFailures(operation) + " failed, mean "
+                               + formatNanos(metrics.getMeanNanos(operation)) + ", p50 < "
+                               + formatNanos(metrics.getPercentileNanos(operation, 50)) + ", p99 < "
+                               + formatNanos(metrics.getPercentileNanos(operation, 99)));
+        }
+        for (ChatMetrics.Cache cache : ChatMetrics.Cache.values()) {
+            sender.sendMessage(ChatColor.YELLOW + cache.name().toLowerCase() + " cache: " + ChatColor.WHITE
+                               + formatHitRate(metrics.getCacheHits(cache), metrics.getCacheMisses(cache)));
+        }
+        ItemTooltipCache tooltips = ItemTooltipCache.getGlobal();
+        sender.sendMessage(ChatColor.YELLOW + "tooltip cache: " + ChatColor.WHITE
+                           + formatHitRate(tooltips.getHits(), tooltips.getMisses()));
+        sender.sendMessage(ChatColor.YELLOW + "sent: " + ChatColor.WHITE + metrics.getPacketsSent() + " packets, "
+                           + metrics.getBytesSent() / 1024 + " KiB");
+        SizeStatistics sizes = SizeStatistics.getGlobal();
+        sender.sendMessage(ChatColor.YELLOW + "size limit: " + ChatColor.WHITE + sizes.getRejected() + " rejected, "
+                           + sizes.getTruncated() + " truncated, " + sizes.getSplit() + " split, largest "
+                           + sizes.getLargestBytes() + " bytes");
+        return true;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1000) {
+            return nanos + "ns";
+        } else if (nanos < 1000000) {
+            return String.format("%.1fus", nanos / 1000D);
+        } else if (nanos < Long.MAX_VALUE) {
+            return String.format("%.1fms", nanos / 1000000D);
+        }
+        return "inf";
+    }
+
+    private static String formatHitRate(long hits, long misses) {
+        long total = hits + misses;
+        return (total == 0 ? "-" : String.format("%.1f%%", hits * 100D / total)) + " of " + total + " lookups";
+    }
+
+    /**
+     * Gets the shared {@link MessagePipeline}, which renders messages off the main thread. This requires the plugin to
+     * be enabled.
+     *
+     * @return the shared MessagePipeline
+     * @throws IllegalStateException thrown if the plugin is not enabled
+     */
+    public static MessagePipeline getPipeline() throws IllegalStateException {
+        if (pipeline == null) {
+            throw new IllegalStateException("SupaChatAPI must be enabled to use the message pipeline.");
+        }
+        return pipeline;
     }
 
     /**
@@ -54,7 +145,7 @@ public class SupaChatAPI extends JavaPlugin {
     public static void stringToFancyMessage(String message, FancyMessage fancyMessage) {
         Validate.notNull(message, "message cannot be null.");
         Validate.notNull(fancyMessage, "fancyMessage cannot be null.");
-        new SafeFancyMessage(message, fancyMessage);
+        SafeFancyMessage.convert(message, fancyMessage);
     }
 
 }
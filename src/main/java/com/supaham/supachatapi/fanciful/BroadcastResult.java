@@ -0,0 +1,60 @@
+package com.supaham.supachatapi.fanciful;
+
+/**
+ * Represents the outcome of broadcasting a message to multiple players.
+ *
+ * @see FancyMessage#broadcast(Iterable)
+ */
+public final class BroadcastResult {
+
+    private final int delivered;
+    private final int failed;
+    private final RuntimeException firstFailure;
+
+    BroadcastResult(int delivered, int failed, RuntimeException firstFailure) {
+        this.delivered = delivered;
+        this.failed = failed;
+        this.firstFailure = firstFailure;
+    }
+
+    /**
+     * Gets the amount of players the message was delivered to.
+     *
+     * @return amount of players delivered to
+     */
+    public int getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Gets the amount of players the message could not be delivered to.
+     *
+     * @return amount of failed players
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Gets the amount of players the message was broadcasted to.
+     *
+     * @return amount of players
+     */
+    public int getTotal() {
+        return delivered + failed;
+    }
+
+    /**
+     * Gets the exception of the first player the message could not be delivered to.
+     *
+     * @return first failure, nullable
+     */
+    public RuntimeException getFirstFailure() {
+        return firstFailure;
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastResult{delivered=" + delivered + ", failed=" + failed + "}";
+    }
+}
@@ -0,0 +1,29 @@
+package com.supaham.supachatapi.fanciful;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Represents an unmodifiable list of NMS chat packets that knows the estimated size of their JSON, so sending them can
+ * be recorded in {@link com.supaham.supachatapi.util.ChatMetrics} without looking at the JSON again.
+ */
+final class ChatPackets extends AbstractList<Object> implements RandomAccess {
+
+    private final Object[] packets;
+    final int bytes;
+
+    ChatPackets(Object[] packets, int bytes) {
+        this.packets = packets;
+        this.bytes = bytes;
+    }
+
+    @Override
+    public Object get(int index) {
+        return packets[index];
+    }
+
+    @Override
+    public int size() {
+        return packets.length;
+    }
+}
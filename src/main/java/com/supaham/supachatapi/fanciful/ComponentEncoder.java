@@ -0,0 +1,209 @@
+package com.supaham.supachatapi.fanciful;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Writes chat components as JSON straight into a {@link StringBuilder}.
+ * <p/>
+ * Strings are escaped exactly like Gson's {@code JsonWriter} escapes them, so the output is identical to what
+ * Fanciful used to produce. Constant fragments such as keys, color names and style names are precomputed.
+ */
+public final class ComponentEncoder {
+
+    static final String TEXT = "{\"text\":";
+    static final String COLOR = ",\"color\":";
+    static final String CLICK_EVENT = ",\"clickEvent\":{\"action\":";
+    static final String HOVER_EVENT = ",\"hoverEvent\":{\"action\":";
+    static final String EVENT_VALUE = ",\"value\":";
+    static final String EXTRA_START = ",\"extra\":[";
+    static final String EXTRA_END = "]}";
+
+    private static final String[] COLORS = new String[ChatColor.values().length];
+    private static final String[] STYLES = new String[ChatColor.values().length];
+    private static final String[] REPLACEMENTS = new String[128];
+    /**
+     * Characters that the server's Gson writes as six character unicode escapes.
+     */
+    private static final String HTML_ESCAPED = "<>&='";
+
+    private static final int MAX_RETAINED_CAPACITY = 32 * 1024;
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    static {
+        for (ChatColor color : ChatColor.values()) {
+            String name;
+            switch (color) {
+                case MAGIC:
+                    name = "obfuscated";
+                    break;
+                case UNDERLINE:
+                    name = "underlined";
+                    break;
+                default:
+                    name = color.name().toLowerCase();
+                    break;
+            }
+            COLORS[color.ordinal()] = COLOR + "\"" + color.name().toLowerCase() + "\"";
+            STYLES[color.ordinal()] = ",\"" + name + "\":true";
+        }
+
+        for (int i = 0; i < 0x20; i++) {
+            REPLACEMENTS[i] = String.format("\\u%04x", i);
+        }
+        REPLACEMENTS['"'] = "\\\"";
+        REPLACEMENTS['\\'] = "\\\\";
+        REPLACEMENTS['\t'] = "\\t";
+        REPLACEMENTS['\b'] = "\\b";
+        REPLACEMENTS['\n'] = "\\n";
+        REPLACEMENTS['\r'] = "\\r";
+        REPLACEMENTS['\f'] = "\\f";
+    }
+
+    private ComponentEncoder() {
+    }
+
+    /**
+     * Gets this thread's reusable {@link StringBuilder}, emptied. The builder must not be held on to after the
+     * calling method returns, and must not be borrowed again while it is in use.
+     *
+     * @return an empty StringBuilder
+     */
+    public static StringBuilder borrowBuilder() {
+        StringBuilder builder = BUILDER.get();
+        if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+            builder = new StringBuilder(256);
+            BUILDER.set(builder);
+        }
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * Appends a String as a quoted and escaped JSON string.
+     *
+     * @param out   builder to append to
+     * @param value string to append, {@code null} is appended as a JSON null
+     * @return {@code out}, for chaining
+     */
+    public static StringBuilder appendString(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        return appendEscaped(out.append('"'), value).append('"');
+    }
+
+    /**
+     * Appends the escaped contents of a JSON string, without the surrounding quotes.
+     *
+     * @param out   builder to append to
+     * @param value string to append
+     * @return {@code out}, for chaining
+     */
+    public static StringBuilder appendEscaped(StringBuilder out, String value) {
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            String replacement = replacement(value.charAt(i));
+            if (replacement == null) {
+                continue;
+            }
+            if (last < i) {
+                out.append(value, last, i);
+            }
+            out.append(replacement);
+            last = i + 1;
+        }
+        if (last < length) {
+            out.append(value, last, length);
+        }
+        return out;
+    }
+
+    /**
+     * Gets the escaped contents of a JSON string, without the surrounding quotes.
+     *
+     * @param value string to escape
+     * @return the escaped string, which is {@code value} itself if nothing had to be escaped
+     */
+    static String escape(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (replacement(value.charAt(i)) != null) {
+                return appendEscaped(new StringBuilder(length + 16), value).toString();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Gets the escape sequence of a character, or null if it is written as is.
+     */
+    private static String replacement(char c) {
+        if (c < 128) {
+            return REPLACEMENTS[c];
+        }
+        if (c == '\u2028') {
+            return "\\u2028";
+        }
+        if (c == '\u2029') {
+            return "\\u2029";
+        }
+        return null;
+    }
+
+    /**
+     * Estimates the amount of bytes a JSON message takes up in a chat packet. The estimate is never smaller than the
+     * UTF-8 length of the JSON the server writes, which escapes more characters than this encoder does.
+     *
+     * @param json JSON to estimate the size of
+     * @return estimated size in bytes
+     */
+    public static int estimateSize(CharSequence json) {
+        int size = 0;
+        int length = json.length();
+        for (int i = 0; i < length; i++) {
+            char c = json.charAt(i);
+            if (c < 0x80) {
+                size += HTML_ESCAPED.indexOf(c) >= 0 ? 6 : 1;
+            } else {
+                size += c < 0x800 || (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) ? 2 : 3;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the amount of bytes a character of a string takes up in a chat packet once it is escaped.
+     *
+     * @see #estimateSize(CharSequence)
+     */
+    static int estimateSize(char c) {
+        if (c < 0x80) {
+            String replacement = REPLACEMENTS[c];
+            return replacement != null ? replacement.length() : HTML_ESCAPED.indexOf(c) >= 0 ? 6 : 1;
+        }
+        if (c == '\u2028' || c == '\u2029') {
+            return 6;
+        }
+        return c < 0x800 || (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) ? 2 : 3;
+    }
+
+    /**
+     * Gets the precomputed {@code ,"color":"name"} fragment of a color.
+     */
+    static String color(ChatColor color) {
+        return COLORS[color.ordinal()];
+    }
+
+    /**
+     * Gets the precomputed {@code ,"name":true} fragment of a style.
+     */
+    static String style(ChatColor style) {
+        return STYLES[style.ordinal()];
+    }
+}
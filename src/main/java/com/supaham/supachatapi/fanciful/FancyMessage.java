@@ -1,16 +1,16 @@
 package com.supaham.supachatapi.fanciful;
 
-import com.supaham.supachatapi.util.ReflectionUtil;
-import java.io.StringWriter;
+import com.supaham.supachatapi.util.ChatMetrics;
+import com.supaham.supachatapi.util.NMSBridge;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang.Validate;
 import org.bukkit.Achievement;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.Statistic;
-import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonWriter;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -23,27 +23,70 @@ import org.bukkit.inventory.ItemStack;
  */
 public class FancyMessage {
 
+    private static volatile SizeLimit sizeLimit = SizeLimit.DEFAULT;
+    private static volatile SendQueue sendQueue;
+    private static final int MAX_RETAINED_PARTS = 64;
+    private static final ThreadLocal<FancyMessage> POOLED = new ThreadLocal<FancyMessage>() {
+        @Override
+        protected FancyMessage initialValue() {
+            FancyMessage fancyMessage = new FancyMessage();
+            fancyMessage.ownedParts = new ArrayList<MessagePart>();
+            return fancyMessage;
+        }
+    };
+
     private final List<MessagePart> messageParts;
     private String jsonString;
     private boolean dirty;
-
-    protected static Class<?> nmsChatSerializer = ReflectionUtil.getNMSClass("ChatSerializer");
-    protected static Class<?> nmsPacketPlayOutChat = ReflectionUtil.getNMSClass("PacketPlayOutChat");
+    /**
+     * Whether this message owned every part when {@link #jsonString} was written. Owned parts mark this message dirty
+     * when they change, so the JSON is reused without looking at them.
+     */
+    private boolean ownsParts;
+    /**
+     * The text and style of every part when {@link #jsonString} was written, so that changes to parts this message
+     * does not own are noticed too.
+     */
+    private Object[] writtenParts;
+    /**
+     * Parts this message created and recycles when it is reset, null unless this message is {@link #pooled()}.
+     */
+    private List<MessagePart> ownedParts;
+    private int ownedPartsUsed;
 
     public FancyMessage(final String firstPartText) {
         messageParts = new ArrayList<MessagePart>();
-        messageParts.add(new MessagePart(firstPartText));
+        messageParts.add(claim(new MessagePart(firstPartText)));
         jsonString = null;
         dirty = true; // true to speed up append(MessagePart)
     }
 
     public FancyMessage() {
         messageParts = new ArrayList<MessagePart>();
-        messageParts.add(new MessagePart());
+        messageParts.add(claim(new MessagePart()));
         jsonString = null;
         dirty = false;
     }
 
+    FancyMessage(final List<MessagePart> messageParts) {
+        this.messageParts = new ArrayList<MessagePart>(messageParts);
+        claimAll();
+        jsonString = null;
+        dirty = true;
+    }
+
+    /**
+     * Constructs a FancyMessage whose JSON is already known, which must look the same as what {@link #toJSONString()}
+     * would write.
+     */
+    FancyMessage(final List<MessagePart> messageParts, final String jsonString) {
+        this.messageParts = new ArrayList<MessagePart>(messageParts);
+        claimAll();
+        this.jsonString = jsonString;
+        dirty = false;
+        snapshotParts();
+    }
+
     /**
      * Sets the text of the current MessagePart.
      *
@@ -71,7 +114,9 @@ public class FancyMessage {
     public FancyMessage append(String text) {
         MessagePart latest = latest();
         if (latest.hasText()) {
-            latest = latest.clone();
+            MessagePart clone = newPart(latest.text);
+            clone.style = latest.style;
+            latest = clone;
             messageParts.add(latest);
         }
         latest.text = text;
@@ -80,19 +125,20 @@ public class FancyMessage {
     }
 
     public FancyMessage append(MessagePart part) {
-        this.messageParts.add(part);
+        this.messageParts.add(claim(part));
         dirty = true;
         return this;
     }
 
     public FancyMessage append(FancyMessage fancyMessage) {
         this.messageParts.addAll(fancyMessage.messageParts);
+        dirty = true;
         return this;
     }
 
     public FancyMessage add(int index, MessagePart part) throws IllegalArgumentException {
         Validate.isTrue(index < messageParts.size());
-        this.messageParts.add(index, part);
+        this.messageParts.add(index, claim(part));
         dirty = true;
         return this;
     }
@@ -189,6 +235,7 @@ public class FancyMessage {
      *
      * @param which achievement to display
      * @return this instance of FancyMessage, for chaining.
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
      */
     public FancyMessage achievementTooltip(final Achievement which) {
         latest().achievementTooltip(which);
@@ -201,6 +248,7 @@ public class FancyMessage {
      *
      * @param which statistic to display
      * @return this instance of FancyMessage, for chaining.
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
      */
     public FancyMessage statisticTooltip(final Statistic which) {
         latest().statisticTooltip(which);
@@ -214,6 +262,7 @@ public class FancyMessage {
      * @param statistic statistic to display
      * @param material  material to pass to the {@code statistic}
      * @return this instance of FancyMessage, for chaining.
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
      */
     public FancyMessage statisticTooltip(final Statistic statistic, Material material) {
         latest().statisticTooltip(statistic, material);
@@ -227,6 +276,7 @@ public class FancyMessage {
      * @param statistic statistic to display
      * @param entity    entity to pass to the {@code statistic}
      * @return this instance of FancyMessage, for chaining.
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
      */
     public FancyMessage statisticTooltip(final Statistic statistic, EntityType entity) {
         latest().statisticTooltip(statistic, entity);
@@ -305,7 +355,7 @@ public class FancyMessage {
         if (!latest().hasText()) {
             return this;
         }
-        messageParts.add(new MessagePart(obj.toString()));
+        messageParts.add(newPart(obj.toString()));
         dirty = true;
         return this;
     }
@@ -319,7 +369,7 @@ public class FancyMessage {
         if (!latest().hasText()) {
             return this;
         }
-        messageParts.add(new MessagePart());
+        messageParts.add(newPart(""));
         dirty = true;
         return this;
     }
@@ -357,50 +407,150 @@ public class FancyMessage {
 
     /**
      * Converts this FancyMessage to a JSON String.
+     * <p/>
+     * The JSON is minimized without changing how the message looks: parts without text are left out, neighbouring
+     * parts with the same color, styles and events are written as one component, and the color, styles and events
+     * that all components have in common are written once on the parent component, which the components inherit
+     * them from.
+     * <p/>
+     * The JSON is kept until this message or one of its parts changes, and is returned without looking at the parts
+     * if this message owns all of them. Every part also keeps its escaped text and events, so serializing the message
+     * again only escapes the parts that changed.
      *
      * @return JSON of this fancy message
      */
     public String toJSONString() {
-        if (!dirty && jsonString != null) {
+        ChatMetrics metrics = ChatMetrics.getGlobal();
+        if (!dirty && jsonString != null && (ownsParts || isSnapshot())) {
+            metrics.recordCache(ChatMetrics.Cache.JSON, true);
             return jsonString;
         }
-        StringWriter string = new StringWriter();
-        JsonWriter json = new JsonWriter(string);
+        metrics.recordCache(ChatMetrics.Cache.JSON, false);
+        long start = metrics.start();
+        boolean serialized = false;
         try {
+            StringBuilder json = ComponentEncoder.borrowBuilder();
             if (messageParts.size() == 1) {
                 latest().writeJson(json);
             } else {
-                json.beginObject().name("text").value("").name("extra").beginArray();
-                for (final MessagePart part : messageParts) {
-                    part.writeJson(json);
-                }
-                json.endArray().endObject();
-                json.close();
+                writeMinimized(json);
             }
-        } catch (Exception e) {
-            throw new RuntimeException("invalid message", e);
+            jsonString = json.toString();
+            dirty = false;
+            snapshotParts();
+            serialized = true;
+            return jsonString;
+        } finally {
+            metrics.stop(ChatMetrics.Operation.SERIALIZE, start, !serialized);
+        }
+    }
+
+    private void snapshotParts() {
+        int length = messageParts.size() * 2;
+        if (writtenParts == null || writtenParts.length != length) {
+            writtenParts = new Object[length];
+        }
+        ownsParts = true;
+        for (int i = 0; i < messageParts.size(); i++) {
+            MessagePart part = messageParts.get(i);
+            writtenParts[i * 2] = part.text;
+            writtenParts[i * 2 + 1] = part.style;
+            ownsParts &= part.owner == this;
+        }
+    }
+
+    /**
+     * Checks whether every part still has the text and style it had when the JSON was written. Both are compared by
+     * identity, as parts replace rather than change them.
+     */
+    private boolean isSnapshot() {
+        if (writtenParts == null || writtenParts.length != messageParts.size() * 2) {
+            return false;
+        }
+        for (int i = 0; i < messageParts.size(); i++) {
+            MessagePart part = messageParts.get(i);
+            if (writtenParts[i * 2] != part.text || writtenParts[i * 2 + 1] != part.style) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeMinimized(StringBuilder json) {
+        // Find the style the components have in common, and whether there is more than one component at all.
+        int components = 0;
+        PartStyle common = null;
+        PartStyle previous = null;
+        for (MessagePart part : messageParts) {
+            if (!part.hasText()) {
+                continue;
+            }
+            if (previous == null || !part.style.isSimilar(previous)) {
+                components++;
+                common = common == null ? part.style : common.intersect(part.style);
+                previous = part.style;
+            }
+        }
+        if (components == 0) {
+            messageParts.get(0).writeJson(json);
+            return;
+        }
+        if (components == 1) {
+            common = PartStyle.PLAIN;
+            json.append(ComponentEncoder.TEXT).append('"');
+        } else {
+            json.append(ComponentEncoder.TEXT).append("\"\"");
+            MessagePart.writeStyle(json, common);
+            json.append(ComponentEncoder.EXTRA_START).append(ComponentEncoder.TEXT).append('"');
+        }
+
+        // Every part keeps its escaped text and events, so only the parts that changed are escaped again.
+        MessagePart previousPart = null;
+        for (MessagePart part : messageParts) {
+            if (!part.hasText()) {
+                continue;
+            }
+            if (previousPart != null && !part.style.isSimilar(previousPart.style)) {
+                json.append('"');
+                previousPart.writeStyleWithout(json, common);
+                json.append("},").append(ComponentEncoder.TEXT).append('"');
+            }
+            part.writeText(json);
+            previousPart = part;
+        }
+        json.append('"');
+        previousPart.writeStyleWithout(json, common);
+        json.append('}');
+        if (components > 1) {
+            json.append(ComponentEncoder.EXTRA_END);
         }
-        jsonString = string.toString();
-        dirty = false;
-        return jsonString;
     }
 
     /**
-     * Sends this FancyMessage to a {@link Player}.
+     * Creates an immutable snapshot of this FancyMessage. The snapshot is not affected by later changes to this
+     * FancyMessage and can be shared between threads.
+     *
+     * @return a new FrozenMessage
+     */
+    public FrozenMessage freeze() {
+        return new FrozenMessage(messageParts, toJSONString());
+    }
+
+    /**
+     * Sends this FancyMessage to a {@link Player}, or queues it if a {@link SendQueue} is installed.
      *
      * @param player player to send message to
+     * @throws IllegalStateException thrown if the message could not be sent or queued, or exceeds the {@link SizeLimit}
+     * @see #setSendQueue(SendQueue)
      */
-    public void send(Player player) {
-        try {
-            Object handle = ReflectionUtil.getHandle(player);
-            Object connection = ReflectionUtil.getField(handle.getClass(), "playerConnection").get(handle);
-            Object serialized =
-                    ReflectionUtil.getMethod(nmsChatSerializer, "a", String.class).invoke(null, toJSONString());
-            Object packet = nmsPacketPlayOutChat.getConstructor(ReflectionUtil.getNMSClass("IChatBaseComponent"))
-                    .newInstance(serialized);
-            ReflectionUtil.getMethod(connection.getClass(), "sendPacket").invoke(connection, packet);
-        } catch (Exception e) {
-            e.printStackTrace();
+    public void send(Player player) throws IllegalStateException {
+        SendQueue queue = sendQueue;
+        if (queue != null) {
+            if (!queue.enqueue(player, this)) {
+                throw new IllegalStateException("The send queue of " + player.getName() + " is full");
+            }
+        } else {
+            sendPackets(player, createPackets());
         }
     }
 
@@ -408,10 +558,107 @@ public class FancyMessage {
      * Sends this FancyMessage to a {@link Player}s.
      *
      * @param players players to send this message to
+     * @see #broadcast(Iterable)
      */
     public void send(final Iterable<Player> players) {
+        broadcast(players);
+    }
+
+    /**
+     * Broadcasts this FancyMessage to {@link Player}s. The message is serialized into packets once, which are then
+     * written to every player's connection. A player the packets could not be sent to does not stop the broadcast.
+     *
+     * @param players players to send this message to
+     * @return the result of the broadcast
+     * @throws IllegalStateException thrown if the message exceeds the {@link SizeLimit}
+     */
+    public BroadcastResult broadcast(final Iterable<? extends Player> players) throws IllegalStateException {
+        Validate.notNull(players, "players cannot be null.");
+        return broadcast(createPackets(), players);
+    }
+
+    /**
+     * Creates the chat packets of this FancyMessage, enforcing the {@link SizeLimit}. There is more than one packet
+     * only if the message was split.
+     *
+     * @return list of NMS PacketPlayOutChat
+     * @throws IllegalStateException thrown if the message exceeds the {@link SizeLimit}
+     */
+    List<Object> createPackets() throws IllegalStateException {
+        List<String> jsons = sizeLimit.enforce(this);
+        Object[] packets = new Object[jsons.size()];
+        int bytes = 0;
+        boolean measure = ChatMetrics.getGlobal().isEnabled();
+        for (int i = 0; i < packets.length; i++) {
+            String json = jsons.get(i);
+            packets[i] = NMSBridge.createChatPacket(json);
+            if (measure) {
+                bytes += ComponentEncoder.estimateSize(json);
+            }
+        }
+        return new ChatPackets(packets, bytes);
+    }
+
+    static BroadcastResult broadcast(List<Object> packets, Iterable<? extends Player> players) {
+        int delivered = 0;
+        int failed = 0;
+        RuntimeException firstFailure = null;
         for (final Player player : players) {
-            send(player);
+            try {
+                sendPackets(player, packets);
+                delivered++;
+            } catch (RuntimeException e) {
+                if (failed++ == 0) {
+                    firstFailure = e;
+                }
+            }
+        }
+        return new BroadcastResult(delivered, failed, firstFailure);
+    }
+
+    /**
+     * Sends every {@link Player} its own chat packets, such as those created by {@link PacketTemplate}. A player the
+     * packets could not be sent to does not stop the broadcast.
+     *
+     * @param packets NMS PacketPlayOutChat to send, by player
+     * @return the result of the broadcast
+     */
+    public static BroadcastResult broadcast(Map<? extends Player, ? extends List<?>> packets) {
+        Validate.notNull(packets, "packets cannot be null.");
+        int delivered = 0;
+        int failed = 0;
+        RuntimeException firstFailure = null;
+        for (Map.Entry<? extends Player, ? extends List<?>> entry : packets.entrySet()) {
+            try {
+                sendPackets(entry.getKey(), entry.getValue());
+                delivered++;
+            } catch (RuntimeException e) {
+                if (failed++ == 0) {
+                    firstFailure = e;
+                }
+            }
+        }
+        return new BroadcastResult(delivered, failed, firstFailure);
+    }
+
+    /**
+     * Sends packets to a {@link Player}, recording it in {@link ChatMetrics}.
+     */
+    static void sendPackets(Player player, List<?> packets) {
+        ChatMetrics metrics = ChatMetrics.getGlobal();
+        long start = metrics.start();
+        boolean sent = false;
+        try {
+            Object connection = NMSBridge.getConnection(player);
+            for (Object packet : packets) {
+                NMSBridge.sendPacket(connection, packet);
+            }
+            sent = true;
+        } finally {
+            metrics.stop(ChatMetrics.Operation.SEND, start, !sent);
+        }
+        if (sent && packets instanceof ChatPackets) {
+            metrics.recordSent(packets.size(), ((ChatPackets) packets).bytes);
         }
     }
 
@@ -427,6 +674,123 @@ public class FancyMessage {
         return removed;
     }
 
+    /**
+     * Gets the {@link SizeLimit} that is enforced on every message before it is sent.
+     *
+     * @return the size limit
+     */
+    public static SizeLimit getSizeLimit() {
+        return sizeLimit;
+    }
+
+    /**
+     * Sets the {@link SizeLimit} that is enforced on every message before it is sent.
+     *
+     * @param sizeLimit size limit to set
+     */
+    public static void setSizeLimit(SizeLimit sizeLimit) {
+        Validate.notNull(sizeLimit, "sizeLimit cannot be null.");
+        FancyMessage.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * Gets the {@link SendQueue} that messages sent to a single player are queued in.
+     *
+     * @return the send queue, or null if messages are sent right away
+     */
+    public static SendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    /**
+     * Sets the {@link SendQueue} that {@link #send(Player)} and {@link FrozenMessage#send(Player)} queue messages in.
+     * Broadcasts are always sent right away.
+     *
+     * @param sendQueue send queue to set, or null to send messages right away
+     */
+    public static void setSendQueue(SendQueue sendQueue) {
+        FancyMessage.sendQueue = sendQueue;
+    }
+
+    /**
+     * Gets this thread's reusable FancyMessage, reset to a single empty part. Building a message this way allocates no
+     * parts once the thread has built a message of the same size before.
+     * <p/>
+     * The message and its parts are reset by the next call on this thread, so neither must be held on to, appended to
+     * another message or passed to another thread. Only what is derived from it, such as its JSON, its packets or a
+     * {@link #freeze() frozen} copy, may be kept.
+     *
+     * @return the reset FancyMessage of this thread
+     */
+    public static FancyMessage pooled() {
+        FancyMessage fancyMessage = POOLED.get();
+        fancyMessage.reset();
+        return fancyMessage;
+    }
+
+    /**
+     * Removes all parts of this FancyMessage, leaving a single empty part. Parts this message created are reused if
+     * it is {@link #pooled()}.
+     *
+     * @return this instance of FancyMessage, for chaining.
+     */
+    public FancyMessage reset() {
+        messageParts.clear();
+        if (ownedParts != null) {
+            if (ownedParts.size() > MAX_RETAINED_PARTS) {
+                ownedParts = new ArrayList<MessagePart>();
+            }
+            ownedPartsUsed = 0;
+        }
+        messageParts.add(newPart(""));
+        jsonString = null;
+        dirty = false;
+        return this;
+    }
+
+    /**
+     * Called by an owned part when it changes.
+     */
+    void partChanged() {
+        dirty = true;
+    }
+
+    /**
+     * Makes this message the owner of a part that has none, so that the part marks this message dirty when it changes.
+     */
+    private MessagePart claim(MessagePart part) {
+        if (part.owner == null) {
+            part.owner = this;
+        }
+        return part;
+    }
+
+    private void claimAll() {
+        for (MessagePart part : messageParts) {
+            claim(part);
+        }
+    }
+
+    /**
+     * Creates a new part, or reuses one this message created before its latest {@link #reset()}.
+     */
+    private MessagePart newPart(String text) {
+        if (ownedParts == null) {
+            return claim(new MessagePart(text));
+        }
+        MessagePart part;
+        if (ownedPartsUsed < ownedParts.size()) {
+            part = ownedParts.get(ownedPartsUsed);
+            part.style = PartStyle.PLAIN;
+            part.text = text;
+        } else {
+            part = claim(new MessagePart(text));
+            ownedParts.add(part);
+        }
+        ownedPartsUsed++;
+        return part;
+    }
+
     private MessagePart latest() {
         return messageParts.get(messageParts.size() - 1);
     }
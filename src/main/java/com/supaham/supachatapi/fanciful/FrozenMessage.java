@@ -0,0 +1,122 @@
+package com.supaham.supachatapi.fanciful;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents an immutable snapshot of a {@link FancyMessage}. A FrozenMessage can safely be kept in static fields and
+ * shared between threads.
+ * <p/>
+ * The JSON of the message is computed when it is frozen, and the chat packets are created once on first use, so
+ * sending a FrozenMessage any number of times costs no serialization.
+ *
+ * @see FancyMessage#freeze()
+ */
+public final class FrozenMessage {
+
+    private final List<MessagePart> messageParts;
+    private final String jsonString;
+    /**
+     * Owns the copied parts and is never changed, so it can create the packets on several threads at once.
+     */
+    private final FancyMessage message;
+    private volatile List<Object> packets;
+
+    FrozenMessage(List<MessagePart> messageParts, String jsonString) {
+        List<MessagePart> copy = new ArrayList<MessagePart>(messageParts.size());
+        for (MessagePart part : messageParts) {
+            copy.add(part.copy());
+        }
+        this.messageParts = Collections.unmodifiableList(copy);
+        this.jsonString = jsonString;
+        this.message = new FancyMessage(copy, jsonString);
+    }
+
+    /**
+     * Gets the JSON of this message.
+     *
+     * @return JSON of this message
+     */
+    public String toJSONString() {
+        return jsonString;
+    }
+
+    /**
+     * Gets the NMS chat packets of this message, creating them on first use. There is more than one packet only if the
+     * message was split by the {@link SizeLimit}.
+     *
+     * @return unmodifiable list of NMS PacketPlayOutChat
+     * @throws IllegalStateException thrown if the message exceeds the {@link SizeLimit}
+     */
+    public List<Object> getPackets() throws IllegalStateException {
+        List<Object> packets = this.packets;
+        if (packets == null) {
+            // The frozen JSON is reused, so the parts are only serialized again if the message has to be split.
+            // Racing threads may create the packets twice, which is harmless as both are equal.
+            this.packets = packets = message.createPackets();
+        }
+        return packets;
+    }
+
+    /**
+     * Sends this message to a {@link Player}, or queues it if a {@link SendQueue} is installed.
+     *
+     * @param player player to send message to
+     * @throws IllegalStateException thrown if the message could not be sent or queued, or exceeds the {@link SizeLimit}
+     * @see FancyMessage#setSendQueue(SendQueue)
+     */
+    public void send(Player player) throws IllegalStateException {
+        SendQueue queue = FancyMessage.getSendQueue();
+        if (queue != null) {
+            if (!queue.enqueue(player, this)) {
+                throw new IllegalStateException("The send queue of " + player.getName() + " is full");
+            }
+        } else {
+            FancyMessage.sendPackets(player, getPackets());
+        }
+    }
+
+    /**
+     * Broadcasts this message to {@link Player}s.
+     *
+     * @param players players to send this message to
+     * @return the result of the broadcast
+     * @see FancyMessage#broadcast(Iterable)
+     */
+    public BroadcastResult broadcast(Iterable<? extends Player> players) {
+        Validate.notNull(players, "players cannot be null.");
+        return FancyMessage.broadcast(getPackets(), players);
+    }
+
+    /**
+     * Creates a new, mutable {@link FancyMessage} with a copy of this message's parts.
+     *
+     * @return a new FancyMessage
+     */
+    public FancyMessage toFancyMessage() {
+        List<MessagePart> copy = new ArrayList<MessagePart>(messageParts.size());
+        for (MessagePart part : messageParts) {
+            copy.add(part.copy());
+        }
+        return new FancyMessage(copy);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof FrozenMessage && jsonString.equals(((FrozenMessage) o).jsonString));
+    }
+
+    @Override
+    public int hashCode() {
+        return jsonString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return jsonString;
+    }
+}
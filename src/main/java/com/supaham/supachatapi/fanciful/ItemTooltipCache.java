@@ -0,0 +1,218 @@
+package com.supaham.supachatapi.fanciful;
+
+import com.supaham.supachatapi.util.LruCache;
+import com.supaham.supachatapi.util.ReflectionUtil;
+import org.apache.commons.lang.Validate;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a bounded cache of the NBT JSON that {@code show_item} hover events display for {@link ItemStack}s.
+ * <p/>
+ * Items are keyed by their type, damage, amount and meta, so equal items share one entry no matter which ItemStack
+ * instance they come from. All methods are thread-safe.
+ *
+ * @see MessagePart#itemTooltip(ItemStack)
+ */
+public final class ItemTooltipCache {
+
+    /**
+     * The default amount of item tooltips to keep cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final ItemTooltipCache GLOBAL = new ItemTooltipCache(DEFAULT_CACHE_SIZE);
+
+    private final LruCache<Fingerprint, String> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new ItemTooltipCache.
+     *
+     * @param cacheSize maximum amount of item tooltips to keep cached
+     */
+    public ItemTooltipCache(int cacheSize) {
+        this.cache = new LruCache<Fingerprint, String>(cacheSize);
+    }
+
+    /**
+     * Gets the cache used by {@link MessagePart#itemTooltip(ItemStack)}.
+     *
+     * @return the global ItemTooltipCache
+     */
+    public static ItemTooltipCache getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * Gets the NBT JSON of an {@link ItemStack}, serializing it only if an equal item is not cached.
+     *
+     * @param itemStack item to get the NBT JSON of
+     * @return the NBT JSON of the item
+     * @throws IllegalStateException thrown if the item could not be serialized, or items can not be serialized on this
+     *                               server
+     */
+    public String getTooltip(ItemStack itemStack) throws IllegalStateException {
+        Validate.notNull(itemStack, "itemStack cannot be null.");
+        Fingerprint fingerprint = new Fingerprint(itemStack);
+        String tooltip = cache.get(fingerprint);
+        if (tooltip != null) {
+            hits.incrementAndGet();
+            return tooltip;
+        }
+        misses.incrementAndGet();
+        tooltip = Nms.save(itemStack);
+        cache.put(fingerprint, tooltip);
+        return tooltip;
+    }
+
+    /**
+     * Gets the amount of tooltips that were served from this cache.
+     *
+     * @return amount of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the amount of tooltips that had to be serialized.
+     *
+     * @return amount of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the amount of cached tooltips.
+     *
+     * @return amount of cached tooltips
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Removes all tooltips from this cache.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Identifies items that serialize to the same NBT.
+     */
+    private static final class Fingerprint {
+
+        private final Material type;
+        private final short damage;
+        private final int amount;
+        private final ItemMeta meta;
+        private final int hash;
+
+        private Fingerprint(ItemStack itemStack) {
+            this.type = itemStack.getType();
+            this.damage = itemStack.getDurability();
+            this.amount = itemStack.getAmount();
+            this.meta = itemStack.hasItemMeta() ? itemStack.getItemMeta() : null;
+            int hash = type.hashCode();
+            hash = hash * 31 + damage;
+            hash = hash * 31 + amount;
+            hash = hash * 31 + (meta == null ? 0 : meta.hashCode());
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) o;
+            return hash == other.hash && type == other.type && damage == other.damage && amount == other.amount
+                   && (meta == null ? other.meta == null : meta.equals(other.meta));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Lazily resolves the reflective handles needed to serialize items, once. A failure is kept instead of thrown, so
+     * that this class always initializes and every use reports the same cause.
+     */
+    private static final class Nms {
+
+        private static final Nms INSTANCE;
+        private static final IllegalStateException FAILURE;
+
+        static {
+            Nms nms = null;
+            IllegalStateException failure = null;
+            try {
+                nms = new Nms();
+            } catch (IllegalStateException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IllegalStateException("Could not resolve the item classes", e);
+            } catch (LinkageError e) { // Thrown if ReflectionUtil could not determine the server version.
+                failure = new IllegalStateException("Could not resolve the item classes", e);
+            }
+            INSTANCE = nms;
+            FAILURE = failure;
+        }
+
+        private final Method asNMSCopyMethod;
+        private final Method saveMethod;
+        private final Constructor<?> tagCompoundConstructor;
+
+        private Nms() {
+            Class<?> craftItemStack = ReflectionUtil.getOBCClass("inventory.CraftItemStack");
+            Class<?> nmsItemStack = ReflectionUtil.getNMSClass("ItemStack");
+            Class<?> tagCompound = ReflectionUtil.getNMSClass("NBTTagCompound");
+            if (craftItemStack == null || nmsItemStack == null || tagCompound == null) {
+                throw new IllegalStateException("Could not resolve the item classes for version "
+                                                + ReflectionUtil.getVersion());
+            }
+            asNMSCopyMethod = ReflectionUtil.getMethod(craftItemStack, "asNMSCopy", ItemStack.class);
+            saveMethod = ReflectionUtil.getMethod(nmsItemStack, "save", tagCompound);
+            if (asNMSCopyMethod == null || saveMethod == null) {
+                throw new IllegalStateException("Could not resolve CraftItemStack.asNMSCopy(ItemStack) or "
+                                                + "ItemStack.save(NBTTagCompound) for version "
+                                                + ReflectionUtil.getVersion());
+            }
+            try {
+                tagCompoundConstructor = tagCompound.getConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Could not resolve NBTTagCompound() for version "
+                                                + ReflectionUtil.getVersion(), e);
+            }
+        }
+
+        private static String save(ItemStack itemStack) throws IllegalStateException {
+            if (FAILURE != null) {
+                throw new IllegalStateException("Item tooltips are unavailable: " + FAILURE.getMessage(), FAILURE);
+            }
+            try {
+                Object nmsItem = INSTANCE.asNMSCopyMethod.invoke(null, itemStack);
+                return INSTANCE.saveMethod.invoke(nmsItem, INSTANCE.tagCompoundConstructor.newInstance()).toString();
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Could not serialize " + itemStack, e.getCause());
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not serialize " + itemStack, e);
+            }
+        }
+    }
+}
@@ -1,35 +1,28 @@
 package com.supaham.supachatapi.fanciful;
 
-import com.supaham.supachatapi.util.ReflectionUtil;
 import net.minecraft.util.org.apache.commons.lang3.Validate;
 import org.bukkit.Achievement;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.Statistic;
-import org.bukkit.craftbukkit.libs.com.google.gson.stream.JsonWriter;
 import org.bukkit.entity.EntityType;
 import org.bukkit.inventory.ItemStack;
 
-import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class MessagePart implements Cloneable {
 
-    ChatColor color = null;
-    ArrayList<ChatColor> styles = new ArrayList<ChatColor>();
-    String clickEvent = null, clickEventData = null,
-            hoverEvent = null, hoverEventData = null;
+    PartStyle style = PartStyle.PLAIN;
     String text = "";
-
-    protected static Class<?> nmsTagCompound = ReflectionUtil.getNMSClass("NBTTagCompound");
-    protected static Class<?> nmsAchievement = ReflectionUtil.getNMSClass("Achievement");
-    protected static Class<?> nmsStatistic = ReflectionUtil.getNMSClass("Statistic");
-    protected static Class<?> nmsItemStack = ReflectionUtil.getNMSClass("ItemStack");
-
-    protected static Class<?> obcStatistic = ReflectionUtil.getOBCClass("CraftStatistic");
-    protected static Class<?> obcItemStack = ReflectionUtil.getOBCClass("inventory.CraftItemStack");
+    /**
+     * The JSON last written for the text and style of this part, reused until they are replaced.
+     */
+    private Fragment textFragment, styleFragment;
+    /**
+     * The message that created or claimed this part and is told when it changes, nullable. Copies are not owned.
+     */
+    FancyMessage owner;
 
     public MessagePart() {
     }
@@ -43,13 +36,10 @@ public class MessagePart implements Cloneable {
         try {
             super.clone();
             MessagePart part = new MessagePart();
-            part.color = this.color;
-            part.styles = this.styles;
-            part.clickEvent = this.clickEvent;
-            part.clickEventData = this.clickEventData;
-            part.hoverEvent = this.hoverEvent;
-            part.hoverEventData = this.hoverEventData;
+            part.style = this.style; // Immutable, so sharing it is safe.
             part.text = this.text;
+            part.textFragment = this.textFragment;
+            part.styleFragment = this.styleFragment;
             return part;
         } catch (CloneNotSupportedException e) {
             e.printStackTrace();
@@ -57,6 +47,13 @@ public class MessagePart implements Cloneable {
         }
     }
 
+    /**
+     * Creates a copy of this part that shares no mutable state with it.
+     */
+    MessagePart copy() {
+        return clone();
+    }
+
     /**
      * Sets the text of this {@link MessagePart}.
      *
@@ -66,6 +63,7 @@ public class MessagePart implements Cloneable {
     public String text(String text) {
         String prev = this.text;
         this.text = text;
+        changed();
         return prev;
     }
 
@@ -81,8 +79,9 @@ public class MessagePart implements Cloneable {
             throw new IllegalArgumentException(color.name() + " is not a color");
         }
 
-        ChatColor prev = this.color;
-        this.color = color;
+        ChatColor prev = this.style.color;
+        this.style = this.style.withColor(color);
+        changed();
         return prev;
     }
 
@@ -94,23 +93,20 @@ public class MessagePart implements Cloneable {
      * @throws IllegalArgumentException thrown if {@code styles} contains a color
      */
     public List<ChatColor> style(ChatColor... styles) throws IllegalArgumentException {
-        boolean reset = false;
+        int bits = 0;
         for (final ChatColor style : styles) {
             if(style.equals(ChatColor.RESET)) {
-                reset = true;
+                bits = PartStyle.bit(ChatColor.RESET);
                 break;
             }
             if (!style.isFormat()) {
                 throw new IllegalArgumentException(style.name() + " is not a style");
             }
+            bits |= PartStyle.bit(style);
         }
-        List<ChatColor> prev = new ArrayList<ChatColor>(this.styles);
-
-        if (reset) {
-            this.styles.add(ChatColor.RESET);
-        } else {
-            this.styles.addAll(Arrays.asList(styles));
-        }
+        List<ChatColor> prev = this.style.getStyles();
+        this.style = this.style.withStyles(this.style.styles | bits);
+        changed();
         return prev;
     }
 
@@ -164,34 +160,26 @@ public class MessagePart implements Cloneable {
      * Displays an {@link Achievement} on hover event.
      *
      * @param which achievement to display
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
+     * @see StatisticNames#getName(Achievement)
      */
     public void achievementTooltip(final Achievement which) {
-        try {
-            Object achievement = ReflectionUtil.getMethod(obcStatistic,
-                                                          "getNMSAchievement").invoke(null, which);
-            achievementTooltip((String) ReflectionUtil.getField(nmsAchievement, "name").get(achievement));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        achievementTooltip(requireName(StatisticNames.getName(which), which));
     }
 
     /**
      * Displays a statistic on hover event.
      *
      * @param which statistic to display
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
+     * @see StatisticNames#getName(Statistic)
      */
     public void statisticTooltip(final Statistic which) {
         Statistic.Type type = which.getType();
         if (type != Statistic.Type.UNTYPED) {
             throw new IllegalArgumentException("That statistic requires an additional " + type + " parameter!");
         }
-        try {
-            Object statistic =
-                    ReflectionUtil.getMethod(obcStatistic, "getNMSStatistic").invoke(null, which);
-            achievementTooltip((String) ReflectionUtil.getField(nmsStatistic, "name").get(statistic));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        achievementTooltip(requireName(StatisticNames.getName(which), which));
     }
 
     /**
@@ -199,23 +187,18 @@ public class MessagePart implements Cloneable {
      *
      * @param statistic statistic to display
      * @param material  material to pass to the {@code statistic}
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
+     * @see StatisticNames#getName(Statistic, Material)
      */
     public void statisticTooltip(final Statistic statistic, Material material) {
         Statistic.Type type = statistic.getType();
         if (type == Statistic.Type.UNTYPED) {
             throw new IllegalArgumentException("That statistic needs no additional parameter!");
         }
-        if ((type == Statistic.Type.BLOCK && material.isBlock()) || type == Statistic.Type.ENTITY) {
+        if ((type == Statistic.Type.BLOCK && !material.isBlock()) || type == Statistic.Type.ENTITY) {
             throw new IllegalArgumentException("Wrong parameter type for that statistic - needs " + type + "!");
         }
-        try {
-            Object obcStatistic = ReflectionUtil.getMethod(MessagePart.obcStatistic, "getMaterialStatistic")
-                    .invoke(null, statistic, material);
-            achievementTooltip(
-                    (String) ReflectionUtil.getField(nmsStatistic, "name").get(obcStatistic));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        achievementTooltip(requireName(StatisticNames.getName(statistic, material), statistic + " " + material));
     }
 
     /**
@@ -223,6 +206,8 @@ public class MessagePart implements Cloneable {
      *
      * @param statistic statistic to display
      * @param entity    entity to pass to the {@code statistic}
+     * @throws IllegalStateException thrown if achievement and statistic names can not be resolved on this server
+     * @see StatisticNames#getName(Statistic, EntityType)
      */
     public void statisticTooltip(final Statistic statistic, EntityType entity) {
         Statistic.Type type = statistic.getType();
@@ -232,14 +217,14 @@ public class MessagePart implements Cloneable {
         if (type != Statistic.Type.ENTITY) {
             throw new IllegalArgumentException("Wrong parameter type for that statistic - needs " + type + "!");
         }
-        try {
-            Object obcStatistic = ReflectionUtil.getMethod(MessagePart.obcStatistic, "getEntityStatistic")
-                    .invoke(null, statistic, entity);
-            achievementTooltip(
-                    (String) ReflectionUtil.getField(nmsStatistic, "name").get(obcStatistic));
-        } catch (Exception e) {
-            e.printStackTrace();
+        achievementTooltip(requireName(StatisticNames.getName(statistic, entity), statistic + " " + entity));
+    }
+
+    private static String requireName(String name, Object which) {
+        if (name == null) {
+            throw new IllegalArgumentException("There is no statistic for " + which + "!");
         }
+        return name;
     }
 
     /**
@@ -253,24 +238,15 @@ public class MessagePart implements Cloneable {
     }
 
     /**
-     * Displays an {@link ItemStack} on hover event.
+     * Displays an {@link ItemStack} on hover event. The NBT of the item is cached in the
+     * {@link ItemTooltipCache#getGlobal() global ItemTooltipCache}.
      *
-     * @param itemStack
-     * @return this instance of FancyMessage, for chaining.
+     * @param itemStack item to display
+     * @throws IllegalStateException thrown if the item could not be serialized, or items can not be serialized on this
+     *                               server
      */
-    public void itemTooltip(final ItemStack itemStack) {
-        try {
-            Object nmsItem =
-                    ReflectionUtil.getMethod(obcItemStack, "asNMSCopy", ItemStack.class)
-                            .invoke(null, itemStack);
-            itemTooltip(
-                    ReflectionUtil.getMethod(nmsItemStack, "save")
-                            .invoke(nmsItem, nmsTagCompound.newInstance())
-                            .toString()
-            );
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    public void itemTooltip(final ItemStack itemStack) throws IllegalStateException {
+        itemTooltip(ItemTooltipCache.getGlobal().getTooltip(itemStack));
     }
 
     /**
@@ -288,7 +264,7 @@ public class MessagePart implements Cloneable {
      * @param lines lines to display
      */
     public void tooltip(final List<String> lines) {
-        tooltip((String[]) lines.toArray());
+        tooltip(lines.toArray(new String[lines.size()]));
     }
 
     /**
@@ -313,8 +289,8 @@ public class MessagePart implements Cloneable {
     public void onClick(final String name, final String data) {
         Validate.notNull(name, "click event name can not be null.");
         Validate.notNull(data, "click event data can not be null.");
-        clickEvent = name;
-        clickEventData = data;
+        style = style.withClickEvent(name, data);
+        changed();
     }
 
     /**
@@ -326,67 +302,86 @@ public class MessagePart implements Cloneable {
     public void onHover(final String name, final String data) {
         Validate.notNull(name, "hover event name can not be null.");
         Validate.notNull(data, "hover event data can not be null.");
-        hoverEvent = name;
-        hoverEventData = data;
+        style = style.withHoverEvent(name, data);
+        changed();
+    }
+
+    private void changed() {
+        if (owner != null) {
+            owner.partChanged();
+        }
     }
 
     protected String makeMultilineTooltip(final String[] lines) {
-        StringWriter string = new StringWriter();
-        JsonWriter json = new JsonWriter(string);
-        try {
-            json.beginObject().name("id").value(1);
-            json.name("tag").beginObject().name("display").beginObject();
-            json.name("Name").value("\\u00A7f" + lines[0].replace("\"", "\\\""));
-            json.name("Lore").beginArray();
-            for (int i = 1; i < lines.length; i++) {
-                final String line = lines[i];
-                json.value(line.isEmpty() ? " " : line.replace("\"", "\\\""));
-            }
-            json.endArray().endObject().endObject().endObject();
-            json.close();
-        } catch (Exception e) {
-            throw new RuntimeException("invalid tooltip", e);
+        StringBuilder json = ComponentEncoder.borrowBuilder();
+        json.append("{\"id\":1,\"tag\":{\"display\":{\"Name\":");
+        ComponentEncoder.appendString(json, "\\u00A7f" + lines[0].replace("\"", "\\\""));
+        json.append(",\"Lore\":[");
+        for (int i = 1; i < lines.length; i++) {
+            final String line = lines[i];
+            if (i > 1) json.append(',');
+            ComponentEncoder.appendString(json, line.isEmpty() ? " " : line.replace("\"", "\\\""));
         }
-        return string.toString();
+        return json.append("]}}}").toString();
     }
 
-    JsonWriter writeJson(JsonWriter json) {
-        try {
-            json.beginObject().name("text").value(text);
-            if (color != null) json.name("color").value(color.name().toLowerCase());
-            for (final ChatColor style : styles) {
-                String styleName;
-                switch (style) {
-                    case MAGIC:
-                        styleName = "obfuscated";
-                        break;
-                    case UNDERLINE:
-                        styleName = "underlined";
-                        break;
-                    default:
-                        styleName = style.name().toLowerCase();
-                        break;
-                }
-                json.name(styleName).value(true);
-            }
-            if (clickEvent != null && clickEventData != null) {
-                json.name("clickEvent")
-                        .beginObject()
-                        .name("action").value(clickEvent)
-                        .name("value").value(clickEventData)
-                        .endObject();
-            }
-            if (hoverEvent != null && hoverEventData != null) {
-                json.name("hoverEvent")
-                        .beginObject()
-                        .name("action").value(hoverEvent)
-                        .name("value").value(hoverEventData)
-                        .endObject();
-            }
-            return json.endObject();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return json;
+    void writeJson(StringBuilder json) {
+        json.append(ComponentEncoder.TEXT);
+        if (text == null) {
+            json.append("null");
+        } else {
+            writeText(json.append('"'));
+            json.append('"');
+        }
+        writeStyleWithout(json, PartStyle.PLAIN);
+        json.append('}');
+    }
+
+    /**
+     * Appends the escaped text of this part, without quotes. The escaped text is kept until the text is replaced, so
+     * serializing a message again only escapes the parts that changed.
+     */
+    void writeText(StringBuilder json) {
+        Fragment fragment = textFragment;
+        if (fragment == null || fragment.value != text) {
+            textFragment = fragment = new Fragment(text, null, ComponentEncoder.escape(text));
+        }
+        json.append(fragment.json);
+    }
+
+    /**
+     * Appends the color, styles and events of this part that a parent component does not already provide, as JSON
+     * properties. The escaped events are kept until the style of this part or the parent style changes.
+     */
+    void writeStyleWithout(StringBuilder json, PartStyle parent) {
+        PartStyle remaining = style.without(parent);
+        if (remaining.clickEvent == null && remaining.hoverEvent == null) {
+            json.append(remaining.styleJson); // Interned, so there is nothing to escape.
+            return;
+        }
+        Fragment fragment = styleFragment;
+        if (fragment == null || fragment.value != style || !fragment.parent.isSimilar(parent)) {
+            StringBuilder styleJson = new StringBuilder(64);
+            writeStyle(styleJson, remaining);
+            styleFragment = fragment = new Fragment(style, parent, styleJson.toString());
+        }
+        json.append(fragment.json);
+    }
+
+    /**
+     * Writes the color, styles and events of a {@link PartStyle} as JSON properties.
+     */
+    static void writeStyle(StringBuilder json, PartStyle style) {
+        json.append(style.styleJson);
+        if (style.clickEvent != null && style.clickEventData != null) {
+            ComponentEncoder.appendString(json.append(ComponentEncoder.CLICK_EVENT), style.clickEvent);
+            ComponentEncoder.appendString(json.append(ComponentEncoder.EVENT_VALUE), style.clickEventData)
+                    .append('}');
+        }
+        if (style.hoverEvent != null && style.hoverEventData != null) {
+            ComponentEncoder.appendString(json.append(ComponentEncoder.HOVER_EVENT), style.hoverEvent);
+            ComponentEncoder.appendString(json.append(ComponentEncoder.EVENT_VALUE), style.hoverEventData)
+                    .append('}');
         }
     }
 
@@ -396,7 +391,9 @@ public class MessagePart implements Cloneable {
      * @return JSON of this MessagePart
      */
     public String toJSONString() {
-        return writeJson(new JsonWriter(new StringWriter())).toString();
+        StringBuilder json = ComponentEncoder.borrowBuilder();
+        writeJson(json);
+        return json.toString();
     }
 
     /**
@@ -424,6 +421,7 @@ public class MessagePart implements Cloneable {
      */
     public void setText(String text) {
         this.text = text;
+        changed();
     }
 
     /**
@@ -432,7 +430,7 @@ public class MessagePart implements Cloneable {
      * @return hover event name, nullable
      */
     public String getHoverEvent() {
-        return hoverEvent;
+        return style.hoverEvent;
     }
 
     /**
@@ -441,7 +439,8 @@ public class MessagePart implements Cloneable {
      * @param hoverEvent name of the hover event to set
      */
     public void setHoverEvent(String hoverEvent) {
-        this.hoverEvent = hoverEvent;
+        this.style = style.withHoverEvent(hoverEvent, style.hoverEventData);
+        changed();
     }
 
     /**
@@ -450,7 +449,7 @@ public class MessagePart implements Cloneable {
      * @return hover event data, nullable
      */
     public String getHoverEventData() {
-        return hoverEventData;
+        return style.hoverEventData;
     }
 
     /**
@@ -459,7 +458,8 @@ public class MessagePart implements Cloneable {
      * @param hoverEventData hover event data to set
      */
     public void setHoverEventData(String hoverEventData) {
-        this.hoverEventData = hoverEventData;
+        this.style = style.withHoverEvent(style.hoverEvent, hoverEventData);
+        changed();
     }
 
     /**
@@ -468,7 +468,7 @@ public class MessagePart implements Cloneable {
      * @return click event name, nullable
      */
     public String getClickEvent() {
-        return clickEvent;
+        return style.clickEvent;
     }
 
     /**
@@ -477,7 +477,8 @@ public class MessagePart implements Cloneable {
      * @param clickEvent click event name to set
      */
     public void setClickEvent(String clickEvent) {
-        this.clickEvent = clickEvent;
+        this.style = style.withClickEvent(clickEvent, style.clickEventData);
+        changed();
     }
 
     /**
@@ -486,7 +487,7 @@ public class MessagePart implements Cloneable {
      * @return click event data, nullable
      */
     public String getClickEventData() {
-        return clickEventData;
+        return style.clickEventData;
     }
 
     /**
@@ -495,25 +496,35 @@ public class MessagePart implements Cloneable {
      * @param clickEventData click event data to set
      */
     public void setClickEventData(String clickEventData) {
-        this.clickEventData = clickEventData;
+        this.style = style.withClickEvent(style.clickEvent, clickEventData);
+        changed();
     }
 
     /**
-     * Gets this {@link MessagePart}'s chat styles.
+     * Gets a copy of this {@link MessagePart}'s chat styles.
      *
-     * @return
+     * @return a new list of styles
      */
     public ArrayList<ChatColor> getStyles() {
-        return styles;
+        return style.getStyles();
     }
 
     /**
      * Sets this {@link MessagePart}'s chat styles.
      *
-     * @param styles
+     * @param styles styles to set
+     * @throws IllegalArgumentException thrown if {@code styles} contains a color
      */
-    public void setStyles(ArrayList<ChatColor> styles) {
-        this.styles = styles;
+    public void setStyles(ArrayList<ChatColor> styles) throws IllegalArgumentException {
+        int bits = 0;
+        for (ChatColor style : styles) {
+            if (PartStyle.bit(style) == 0) {
+                throw new IllegalArgumentException(style.name() + " is not a style");
+            }
+            bits |= PartStyle.bit(style);
+        }
+        this.style = this.style.withStyles(bits);
+        changed();
     }
 
     /**
@@ -522,7 +533,7 @@ public class MessagePart implements Cloneable {
      * @return
      */
     public ChatColor getColor() {
-        return color;
+        return style.color;
     }
 
     /**
@@ -531,6 +542,24 @@ public class MessagePart implements Cloneable {
      * @param color
      */
     public void setColor(ChatColor color) {
-        this.color = color;
+        this.style = style.withColor(color);
+        changed();
+    }
+
+    /**
+     * Represents the JSON written for an immutable value. Fragments are replaced rather than changed, so parts that are
+     * serialized by several threads at once, such as those of a {@link FrozenMessage}, never see a torn fragment.
+     */
+    private static final class Fragment {
+
+        private final Object value;
+        private final PartStyle parent;
+        private final String json;
+
+        private Fragment(Object value, PartStyle parent, String json) {
+            this.value = value;
+            this.parent = parent;
+            this.json = json;
+        }
     }
 }
@@ -0,0 +1,191 @@
+package com.supaham.supachatapi.fanciful;
+
+import com.supaham.supachatapi.util.ByteBufferInputStream;
+import com.supaham.supachatapi.util.StringDecoder;
+import org.apache.commons.lang.Validate;
+import org.bukkit.ChatColor;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a stream of {@link FancyMessage}s in the binary format written by {@link MessageWriter}. Reading a
+ * message costs no markup parsing, and every String of the stream is decoded once and shared by all parts that use it.
+ * A MessageReader is not thread-safe.
+ *
+ * @see #open(File)
+ */
+public final class MessageReader implements Closeable {
+
+    private final DataInputStream in;
+    private final StringDecoder strings;
+
+    /**
+     * Constructs a new MessageReader and reads the header of the stream.
+     *
+     * @param in stream to read from, it is buffered by this reader
+     * @throws IOException thrown if the header could not be read or is not supported
+     */
+    public MessageReader(InputStream in) throws IOException {
+        Validate.notNull(in, "in cannot be null.");
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.strings = new StringDecoder(this.in, false);
+        readHeader();
+    }
+
+    /**
+     * Constructs a new MessageReader over the remaining bytes of a {@link ByteBuffer}, such as a mapped file, and reads
+     * the header of the stream. The position of the buffer is advanced as messages are read.
+     *
+     * @param buffer buffer to read from
+     * @throws IOException thrown if the header could not be read or is not supported
+     */
+    public MessageReader(ByteBuffer buffer) throws IOException {
+        this.in = new DataInputStream(new ByteBufferInputStream(buffer));
+        this.strings = new StringDecoder(this.in, true);
+        readHeader();
+    }
+
+    /**
+     * Opens a MessageReader over a memory-mapped file. The file is mapped read-only and is not copied onto the heap,
+     * so large files of messages load quickly.
+     *
+     * @param file file to read
+     * @return a new MessageReader
+     * @throws IOException thrown if the file could not be mapped, or its header is not supported
+     */
+    public static MessageReader open(File file) throws IOException {
+        Validate.notNull(file, "file cannot be null.");
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            // The mapping stays valid after the channel is closed.
+            return new MessageReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads the next {@link FancyMessage}.
+     *
+     * @return the message, or null if the stream has ended
+     * @throws IOException thrown if the message could not be read or is malformed
+     */
+    public FancyMessage read() throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        int size = strings.readVarInt(first);
+        List<MessagePart> parts = new ArrayList<MessagePart>(Math.min(size, 64));
+        for (int i = 0; i < size; i++) {
+            parts.add(readPart());
+        }
+        return new FancyMessage(parts);
+    }
+
+    /**
+     * Reads every remaining {@link FancyMessage}.
+     *
+     * @return list of messages
+     * @throws IOException thrown if a message could not be read or is malformed
+     */
+    public List<FancyMessage> readAll() throws IOException {
+        List<FancyMessage> messages = new ArrayList<FancyMessage>();
+        FancyMessage message;
+        while ((message = read()) != null) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Gets the amount of distinct Strings read so far.
+     *
+     * @return amount of Strings
+     */
+    public int getStringCount() {
+        return strings.getStringCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readHeader() throws IOException {
+        int magic = in.readInt();
+        if ((magic & ~0xFF) != MessageWriter.MAGIC) {
+            throw new IOException("Not a message stream.");
+        }
+        if ((magic & 0xFF) != MessageWriter.FORMAT_VERSION) {
+            throw new IOException("Unsupported message format version " + (magic & 0xFF) + ".");
+        }
+    }
+
+    private MessagePart readPart() throws IOException {
+        int flags = in.readUnsignedByte();
+        if ((flags & ~(MessageWriter.HAS_COLOR | MessageWriter.HAS_STYLES | MessageWriter.HAS_CLICK
+                       | MessageWriter.HAS_HOVER)) != 0) {
+            throw new IOException("Malformed part flags " + flags + ".");
+        }
+        MessagePart part = new MessagePart(strings.readString());
+        PartStyle style = PartStyle.PLAIN;
+        if ((flags & MessageWriter.HAS_COLOR) != 0) {
+            char code = (char) in.readUnsignedByte();
+            ChatColor color = ChatColor.getByChar(code);
+            if (color == null || (!color.isColor() && color != ChatColor.RESET)) {
+                throw new IOException("Malformed color code " + code + ".");
+            }
+            style = style.withColor(color);
+        }
+        if ((flags & MessageWriter.HAS_STYLES) != 0) {
+            int styles = in.readUnsignedByte();
+            if (styles >> MessageWriter.STYLE_CODES.length() != 0) {
+                throw new IOException("Malformed styles " + styles + ".");
+            }
+            int bits = 0;
+            for (int i = 0; i < MessageWriter.STYLE_CODES.length(); i++) {
+                if ((styles & 1 << i) != 0) {
+                    bits |= PartStyle.bit(ChatColor.getByChar(MessageWriter.STYLE_CODES.charAt(i)));
+                }
+            }
+            style = style.withStyles(bits);
+        }
+        if ((flags & MessageWriter.HAS_CLICK) != 0) {
+            String name = readEventName(MessageWriter.CLICK_EVENTS);
+            style = style.withClickEvent(name, strings.readString());
+        }
+        if ((flags & MessageWriter.HAS_HOVER) != 0) {
+            String name = readEventName(MessageWriter.HOVER_EVENTS);
+            style = style.withHoverEvent(name, strings.readString());
+        }
+        part.style = style;
+        return part;
+    }
+
+    private String readEventName(String[] names) throws IOException {
+        int code = in.readUnsignedByte();
+        if (code == MessageWriter.CUSTOM_EVENT) {
+            String name = strings.readString();
+            if (name == null) {
+                throw new IOException("Malformed event name.");
+            }
+            return name;
+        }
+        if (code >= names.length) {
+            throw new IOException("Malformed event code " + code + ".");
+        }
+        return names[code];
+    }
+}
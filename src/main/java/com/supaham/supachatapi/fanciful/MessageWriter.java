@@ -0,0 +1,150 @@
+package com.supaham.supachatapi.fanciful;
+
+import com.supaham.supachatapi.util.StringEncoder;
+import org.apache.commons.lang.Validate;
+import org.bukkit.ChatColor;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Represents a stream of {@link FancyMessage}s encoded in the compact binary format read by {@link MessageReader}.
+ * <p/>
+ * The stream starts with a header and is followed by any amount of messages. Every String is written in full only the
+ * first time it appears in the stream, later occurrences refer back to it by index, see {@link StringEncoder}. Colors are written as their
+ * legacy code, styles as a bitmask and the standard events as a single byte, so the format does not depend on the
+ * order of {@link ChatColor}. A MessageWriter is not thread-safe.
+ *
+ * @see MessageReader
+ */
+public final class MessageWriter implements Closeable, Flushable {
+
+    /**
+     * The first bytes of every stream, {@code "SCM"} followed by {@link #FORMAT_VERSION}.
+     */
+    static final int MAGIC = 0x53434D00;
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    // Part flags.
+    static final int HAS_COLOR = 1, HAS_STYLES = 2, HAS_CLICK = 4, HAS_HOVER = 8;
+    static final int CUSTOM_EVENT = 0xFF;
+
+    /**
+     * The styles in bitmask order, by legacy code.
+     */
+    static final String STYLE_CODES = "klmnor";
+    static final String[] CLICK_EVENTS = {"open_url", "open_file", "run_command", "suggest_command"};
+    static final String[] HOVER_EVENTS = {"show_text", "show_achievement", "show_item"};
+
+    private final DataOutputStream out;
+    private final StringEncoder strings;
+
+    /**
+     * Constructs a new MessageWriter and writes the header of the stream.
+     *
+     * @param out stream to write to, it is buffered by this writer
+     * @throws IOException thrown if the header could not be written
+     */
+    public MessageWriter(OutputStream out) throws IOException {
+        Validate.notNull(out, "out cannot be null.");
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC | FORMAT_VERSION);
+        this.strings = new StringEncoder(this.out);
+    }
+
+    /**
+     * Writes a {@link FancyMessage}.
+     *
+     * @param message message to write
+     * @throws IOException thrown if the message could not be written
+     */
+    public void write(FancyMessage message) throws IOException {
+        Validate.notNull(message, "message cannot be null.");
+        List<MessagePart> parts = message.getMessageParts();
+        strings.writeVarInt(parts.size());
+        for (MessagePart part : parts) {
+            writePart(part);
+        }
+    }
+
+    /**
+     * Writes every {@link FancyMessage} of an {@link Iterable}.
+     *
+     * @param messages messages to write
+     * @throws IOException thrown if a message could not be written
+     */
+    public void writeAll(Iterable<? extends FancyMessage> messages) throws IOException {
+        Validate.notNull(messages, "messages cannot be null.");
+        for (FancyMessage message : messages) {
+            write(message);
+        }
+    }
+
+    /**
+     * Gets the amount of distinct Strings written so far.
+     *
+     * @return amount of Strings
+     */
+    public int getStringCount() {
+        return strings.getStringCount();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writePart(MessagePart part) throws IOException {
+        PartStyle style = part.style;
+        int styles = 0;
+        for (int i = 0; i < STYLE_CODES.length(); i++) {
+            if ((style.styles & PartStyle.bit(ChatColor.getByChar(STYLE_CODES.charAt(i)))) != 0) {
+                styles |= 1 << i;
+            }
+        }
+        int flags = (style.color != null ? HAS_COLOR : 0) | (styles != 0 ? HAS_STYLES : 0)
+                    | (style.clickEvent != null ? HAS_CLICK : 0) | (style.hoverEvent != null ? HAS_HOVER : 0);
+        out.writeByte(flags);
+        strings.writeString(part.text);
+        if (style.color != null) {
+            out.writeByte(style.color.getChar());
+        }
+        if (styles != 0) {
+            out.writeByte(styles);
+        }
+        if (style.clickEvent != null) {
+            writeEvent(CLICK_EVENTS, style.clickEvent, style.clickEventData);
+        }
+        if (style.hoverEvent != null) {
+            writeEvent(HOVER_EVENTS, style.hoverEvent, style.hoverEventData);
+        }
+    }
+
+    private void writeEvent(String[] names, String name, String data) throws IOException {
+        int code = CUSTOM_EVENT;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                code = i;
+                break;
+            }
+        }
+        out.writeByte(code);
+        if (code == CUSTOM_EVENT) {
+            strings.writeString(name);
+        }
+        strings.writeString(data);
+    }
+}
@@ -0,0 +1,175 @@
+package com.supaham.supachatapi.fanciful;
+
+import com.supaham.supachatapi.util.NMSBridge;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the JSON of a {@link FancyMessage} that has been split around variable slots once, so that creating the
+ * message for different values only escapes the values and joins them with the constant JSON fragments.
+ * <p/>
+ * A slot is marked by putting {@link #slot(int)} into the text or event data of a part. Every character from
+ * {@code U+E000} to {@code U+F8FF} in the message is taken as a slot, so the message must not contain any of them
+ * otherwise.
+ */
+public final class PacketTemplate {
+
+    /**
+     * The maximum amount of slots a PacketTemplate can have.
+     */
+    public static final int MAX_SLOTS = 0xF8FF - 0xE000 + 1;
+
+    private static final char FIRST_SLOT = '\uE000';
+    private static final char LAST_SLOT = '\uF8FF';
+
+    private final List<MessagePart> messageParts;
+    private final String[] fragments; // One more than slots.
+    private final int[] slots;
+
+    private PacketTemplate(List<MessagePart> messageParts, String[] fragments, int[] slots) {
+        this.messageParts = messageParts;
+        this.fragments = fragments;
+        this.slots = slots;
+    }
+
+    /**
+     * Gets the marker of a slot.
+     *
+     * @param index index of the slot, from 0 to {@link #MAX_SLOTS} (exclusive)
+     * @return the slot marker
+     */
+    public static String slot(int index) {
+        Validate.isTrue(index >= 0 && index < MAX_SLOTS, "index must be between 0 and " + MAX_SLOTS + ".");
+        return String.valueOf((char) (FIRST_SLOT + index));
+    }
+
+    /**
+     * Compiles a message that contains {@link #slot(int)} markers. The message is copied, so later changes to it do
+     * not affect the template.
+     *
+     * @param message message to compile
+     * @return the compiled template
+     */
+    public static PacketTemplate compile(FancyMessage message) {
+        Validate.notNull(message, "message cannot be null.");
+        String json = message.toJSONString();
+        List<String> fragments = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+        int last = 0;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c >= FIRST_SLOT && c <= LAST_SLOT) {
+                fragments.add(json.substring(last, i));
+                slots.add(c - FIRST_SLOT);
+                last = i + 1;
+            }
+        }
+        fragments.add(json.substring(last));
+
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        List<MessagePart> parts = new ArrayList<MessagePart>(message.getMessageParts().size());
+        for (MessagePart part : message.getMessageParts()) {
+            parts.add(part.copy());
+        }
+        return new PacketTemplate(parts, fragments.toArray(new String[fragments.size()]), slotArray);
+    }
+
+    /**
+     * Gets the JSON of this template with its slots filled in. Parts whose text is only a slot are kept even if their
+     * value is empty, so the JSON may be larger than that of the equal {@link FancyMessage}, but it looks the same.
+     *
+     * @param values value of every slot, by index
+     * @return the JSON of the message
+     * @throws IllegalArgumentException thrown if a slot has no value
+     */
+    public String toJSONString(String... values) throws IllegalArgumentException {
+        return write(values).toString();
+    }
+
+    /**
+     * Creates the chat packets of this template with its slots filled in, enforcing the {@link SizeLimit}. There is
+     * more than one packet only if the message was split.
+     *
+     * @param values value of every slot, by index
+     * @return list of NMS PacketPlayOutChat
+     * @throws IllegalArgumentException thrown if a slot has no value
+     * @throws IllegalStateException    thrown if the message exceeds the {@link SizeLimit}
+     */
+    public List<Object> createPackets(String... values) throws IllegalArgumentException, IllegalStateException {
+        StringBuilder json = write(values);
+        int size = ComponentEncoder.estimateSize(json);
+        if (size > FancyMessage.getSizeLimit().getMaxBytes()) {
+            // Let the FancyMessage split or truncate it, which needs the parts.
+            return toFancyMessage(values).createPackets();
+        }
+        String jsonString = json.toString();
+        SizeStatistics.getGlobal().record(size, jsonString);
+        return new ChatPackets(new Object[]{NMSBridge.createChatPacket(jsonString)}, size);
+    }
+
+    /**
+     * Creates a new {@link FancyMessage} of this template with its slots filled in. The JSON of the message is spliced
+     * from the fragments right away, so {@link FancyMessage#toJSONString()} does not serialize it again until it is
+     * changed.
+     *
+     * @param values value of every slot, by index
+     * @return a new FancyMessage
+     * @throws IllegalArgumentException thrown if a slot has no value
+     */
+    public FancyMessage toFancyMessage(String... values) throws IllegalArgumentException {
+        List<MessagePart> parts = new ArrayList<MessagePart>(messageParts.size());
+        for (MessagePart part : messageParts) {
+            MessagePart filled = part.copy();
+            filled.text = fill(part.text, values);
+            PartStyle style = part.style;
+            if (style.clickEventData != null) {
+                style = style.withClickEvent(style.clickEvent, fill(style.clickEventData, values));
+            }
+            if (style.hoverEventData != null) {
+                style = style.withHoverEvent(style.hoverEvent, fill(style.hoverEventData, values));
+            }
+            filled.style = style;
+            parts.add(filled);
+        }
+        return new FancyMessage(parts, write(values).toString());
+    }
+
+    private StringBuilder write(String[] values) {
+        Validate.notNull(values, "values cannot be null.");
+        StringBuilder json = ComponentEncoder.borrowBuilder();
+        json.append(fragments[0]);
+        for (int i = 0; i < slots.length; i++) {
+            ComponentEncoder.appendEscaped(json, value(values, slots[i]));
+            json.append(fragments[i + 1]);
+        }
+        return json;
+    }
+
+    private static String fill(String s, String[] values) {
+        StringBuilder out = null;
+        int last = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= FIRST_SLOT && c <= LAST_SLOT) {
+                if (out == null) {
+                    out = new StringBuilder(s.length() + 16);
+                }
+                out.append(s, last, i).append(value(values, c - FIRST_SLOT));
+                last = i + 1;
+            }
+        }
+        return out == null ? s : out.append(s, last, s.length()).toString();
+    }
+
+    private static String value(String[] values, int slot) {
+        if (slot >= values.length || values[slot] == null) {
+            throw new IllegalArgumentException("slot " + slot + " has no value.");
+        }
+        return values[slot];
+    }
+}
@@ -0,0 +1,164 @@
+package com.supaham.supachatapi.fanciful;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+
+/**
+ * Represents the immutable color, styles and events of a {@link MessagePart}. Styles are kept as a bitmask.
+ * <p/>
+ * Parts share their PartStyle and replace it whenever they change, so cloning a part never copies its style and
+ * changing a clone never changes the original. Every combination of color and styles without events is interned, and
+ * carries its JSON fragment so serializing it is a single append. Styles with events are not interned, as event data is
+ * unbounded.
+ */
+final class PartStyle {
+
+    private static final ChatColor[] VALUES = ChatColor.values();
+    private static final int[] BITS = new int[VALUES.length];
+    private static final PartStyle[][] INTERNED;
+
+    static {
+        int bit = 1;
+        for (ChatColor color : VALUES) {
+            if (color.isFormat() || color == ChatColor.RESET) {
+                BITS[color.ordinal()] = bit;
+                bit <<= 1;
+            }
+        }
+
+        // Index 0 is no color, index i is the color with ordinal i - 1.
+        INTERNED = new PartStyle[VALUES.length + 1][bit];
+        for (int colorIndex = 0; colorIndex <= VALUES.length; colorIndex++) {
+            ChatColor color = colorIndex == 0 ? null : VALUES[colorIndex - 1];
+            for (int styles = 0; styles < bit; styles++) {
+                StringBuilder json = new StringBuilder();
+                if (color != null) {
+                    json.append(ComponentEncoder.color(color));
+                }
+                for (ChatColor style : VALUES) {
+                    if ((styles & BITS[style.ordinal()]) != 0) {
+                        json.append(ComponentEncoder.style(style));
+                    }
+                }
+                INTERNED[colorIndex][styles] = new PartStyle(color, styles, json.toString(), null, null, null, null);
+            }
+        }
+    }
+
+    /**
+     * The style without color, styles and events.
+     */
+    static final PartStyle PLAIN = INTERNED[0][0];
+
+    final ChatColor color;
+    final int styles;
+    final String styleJson;
+    final String clickEvent, clickEventData, hoverEvent, hoverEventData;
+
+    private PartStyle(ChatColor color, int styles, String styleJson, String clickEvent, String clickEventData,
+                      String hoverEvent, String hoverEventData) {
+        this.color = color;
+        this.styles = styles;
+        this.styleJson = styleJson;
+        this.clickEvent = clickEvent;
+        this.clickEventData = clickEventData;
+        this.hoverEvent = hoverEvent;
+        this.hoverEventData = hoverEventData;
+    }
+
+    /**
+     * Gets the style bit of a {@link ChatColor}, or 0 if it is not a style.
+     */
+    static int bit(ChatColor style) {
+        return BITS[style.ordinal()];
+    }
+
+    PartStyle withColor(ChatColor color) {
+        return with(color, styles, clickEvent, clickEventData, hoverEvent, hoverEventData);
+    }
+
+    PartStyle withStyles(int styles) {
+        return with(color, styles, clickEvent, clickEventData, hoverEvent, hoverEventData);
+    }
+
+    PartStyle withClickEvent(String clickEvent, String clickEventData) {
+        return with(color, styles, clickEvent, clickEventData, hoverEvent, hoverEventData);
+    }
+
+    PartStyle withHoverEvent(String hoverEvent, String hoverEventData) {
+        return with(color, styles, clickEvent, clickEventData, hoverEvent, hoverEventData);
+    }
+
+    /**
+     * Gets the styles of this PartStyle as a list, in {@link ChatColor} order.
+     */
+    ArrayList<ChatColor> getStyles() {
+        ArrayList<ChatColor> list = new ArrayList<ChatColor>(Integer.bitCount(styles));
+        for (ChatColor style : VALUES) {
+            if ((styles & BITS[style.ordinal()]) != 0) {
+                list.add(style);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Checks whether this PartStyle has the same color, styles and events as another.
+     */
+    boolean isSimilar(PartStyle other) {
+        return this == other || (color == other.color && styles == other.styles && sameClickEvent(other)
+                                 && sameHoverEvent(other));
+    }
+
+    /**
+     * Gets the color, styles and events this PartStyle has in common with another.
+     */
+    PartStyle intersect(PartStyle other) {
+        if (isSimilar(other)) {
+            return this;
+        }
+        boolean click = sameClickEvent(other);
+        boolean hover = sameHoverEvent(other);
+        return with(color == other.color ? color : null, styles & other.styles,
+                    click ? clickEvent : null, click ? clickEventData : null,
+                    hover ? hoverEvent : null, hover ? hoverEventData : null);
+    }
+
+    /**
+     * Gets what remains of this PartStyle when a parent component already provides the given PartStyle, which must be
+     * an {@link #intersect(PartStyle) intersection} of this one.
+     */
+    PartStyle without(PartStyle parent) {
+        if (parent == PLAIN) {
+            return this;
+        }
+        boolean click = sameClickEvent(parent);
+        boolean hover = sameHoverEvent(parent);
+        return with(color == parent.color ? null : color, styles & ~parent.styles,
+                    click ? null : clickEvent, click ? null : clickEventData,
+                    hover ? null : hoverEvent, hover ? null : hoverEventData);
+    }
+
+    private boolean sameClickEvent(PartStyle other) {
+        return equal(clickEvent, other.clickEvent) && equal(clickEventData, other.clickEventData);
+    }
+
+    private boolean sameHoverEvent(PartStyle other) {
+        return equal(hoverEvent, other.hoverEvent) && equal(hoverEventData, other.hoverEventData);
+    }
+
+    private static PartStyle with(ChatColor color, int styles, String clickEvent, String clickEventData,
+                                  String hoverEvent, String hoverEventData) {
+        PartStyle interned = INTERNED[color == null ? 0 : color.ordinal() + 1][styles];
+        if (clickEvent == null && clickEventData == null && hoverEvent == null && hoverEventData == null) {
+            return interned;
+        }
+        return new PartStyle(color, styles, interned.styleJson, clickEvent, clickEventData, hoverEvent,
+                             hoverEventData);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,366 @@
+package com.supaham.supachatapi.fanciful;
+
+import com.supaham.supachatapi.util.NMSBridge;
+import org.apache.commons.lang.Validate;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents per-player queues of outgoing chat messages that are drained on the main thread, at most a budget of
+ * packets per player every tick.
+ * <p/>
+ * Once installed with {@link FancyMessage#setSendQueue(SendQueue)}, {@link FancyMessage#send(Player)} and
+ * {@link FrozenMessage#send(Player)} queue their message instead of sending it. Queueing does not lock and may be done
+ * from any thread. When a queue is drained, a message with the same JSON as the message drained right before it is
+ * dropped, and neighbouring messages that fit in the {@link SizeLimit} together are merged into one packet, separated
+ * by line breaks. Messages stay queued until their packets were sent, so a failed send is retried by the next drain.
+ * Messages can not be queued for a player whose queue is full until it drains.
+ *
+ * @see #start()
+ */
+public final class SendQueue {
+
+    /**
+     * The default amount of packets sent to a player every tick.
+     */
+    public static final int DEFAULT_BUDGET = 8;
+    /**
+     * The default amount of messages that may be queued for a player.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+    /**
+     * The default amount of messages merged into one packet.
+     */
+    public static final int DEFAULT_MAX_MERGED = 8;
+
+    private static final String MERGED_START = ComponentEncoder.TEXT + "\"\"" + ComponentEncoder.EXTRA_START;
+    private static final String MERGED_SEPARATOR = "," + ComponentEncoder.TEXT + "\"\\n\"},";
+    private static final int MERGED_START_SIZE = ComponentEncoder.estimateSize(MERGED_START);
+    private static final int MERGED_SEPARATOR_SIZE = ComponentEncoder.estimateSize(MERGED_SEPARATOR);
+    private static final int MERGED_END_SIZE = ComponentEncoder.estimateSize(ComponentEncoder.EXTRA_END);
+
+    private final Plugin plugin;
+    private final int budget;
+    private final int capacity;
+    private final int maxMerged;
+    private final ConcurrentMap<Player, PlayerQueue> queues = new ConcurrentHashMap<Player, PlayerQueue>();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private BukkitTask drainTask;
+
+    /**
+     * Constructs a new SendQueue with a budget of {@link #DEFAULT_BUDGET} packets, a capacity of
+     * {@link #DEFAULT_CAPACITY} messages and at most {@link #DEFAULT_MAX_MERGED} messages merged into one packet.
+     *
+     * @param plugin plugin to schedule the drain task with
+     */
+    public SendQueue(Plugin plugin) {
+        this(plugin, DEFAULT_BUDGET, DEFAULT_CAPACITY, DEFAULT_MAX_MERGED);
+    }
+
+    /**
+     * Constructs a new SendQueue.
+     *
+     * @param plugin    plugin to schedule the drain task with
+     * @param budget    amount of packets sent to a player every tick, must be larger than 0
+     * @param capacity  amount of messages that may be queued for a player, must be larger than 0
+     * @param maxMerged amount of messages merged into one packet, 1 to not merge messages
+     */
+    public SendQueue(Plugin plugin, int budget, int capacity, int maxMerged) {
+        Validate.notNull(plugin, "plugin cannot be null.");
+        Validate.isTrue(budget > 0, "budget must be larger than 0.");
+        Validate.isTrue(capacity > 0, "capacity must be larger than 0.");
+        Validate.isTrue(maxMerged > 0, "maxMerged must be larger than 0.");
+        this.plugin = plugin;
+        this.budget = budget;
+        this.capacity = capacity;
+        this.maxMerged = maxMerged;
+    }
+
+    /**
+     * Starts draining the queues every tick. This must be called on the main thread.
+     *
+     * @throws IllegalStateException thrown if this queue was already started
+     */
+    public synchronized void start() throws IllegalStateException {
+        if (drainTask != null) {
+            throw new IllegalStateException("send queue was already started.");
+        }
+        drainTask = plugin.getServer().getScheduler().runTaskTimer(plugin, new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, 1, 1);
+    }
+
+    /**
+     * Queues a {@link FancyMessage} for a {@link Player}. The message is serialized right away, so it may be changed
+     * once this method returns.
+     *
+     * @param player  player to send the message to
+     * @param message message to send
+     * @return whether the message was queued, false if the player's queue is full
+     * @throws IllegalStateException thrown if the message exceeds the {@link SizeLimit}
+     */
+    public boolean enqueue(Player player, FancyMessage message) throws IllegalStateException {
+        Validate.notNull(message, "message cannot be null.");
+        String json = message.toJSONString();
+        int size = ComponentEncoder.estimateSize(json);
+        // Messages that have to be split or truncated are never merged, so their packets are created now.
+        List<Object> packets = size > FancyMessage.getSizeLimit().getMaxBytes() ? message.createPackets() : null;
+        return enqueue(player, new QueuedMessage(json, size, packets));
+    }
+
+    /**
+     * Queues a {@link FrozenMessage} for a {@link Player}.
+     *
+     * @param player  player to send the message to
+     * @param message message to send
+     * @return whether the message was queued, false if the player's queue is full
+     * @throws IllegalStateException thrown if the message exceeds the {@link SizeLimit}
+     */
+    public boolean enqueue(Player player, FrozenMessage message) throws IllegalStateException {
+        Validate.notNull(message, "message cannot be null.");
+        String json = message.toJSONString();
+        return enqueue(player, new QueuedMessage(json, ComponentEncoder.estimateSize(json), message.getPackets()));
+    }
+
+    private boolean enqueue(Player player, QueuedMessage entry) {
+        Validate.notNull(player, "player cannot be null.");
+        PlayerQueue queue = queues.get(player);
+        if (queue == null) {
+            PlayerQueue created = new PlayerQueue();
+            queue = queues.putIfAbsent(player, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        if (queue.size.incrementAndGet() > capacity) {
+            queue.size.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        queue.entries.offer(entry);
+        return true;
+    }
+
+    /**
+     * Sends every player the messages that fit in their budget. This is called every tick once this queue is started,
+     * and must only be called on the main thread.
+     *
+     * @return the amount of packets that were sent
+     */
+    public int drain() {
+        return drain(budget);
+    }
+
+    private int drain(int budget) {
+        int sent = 0;
+        Iterator<Map.Entry<Player, PlayerQueue>> iterator = queues.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Player, PlayerQueue> entry = iterator.next();
+            Player player = entry.getKey();
+            if (!player.isOnline()) {
+                iterator.remove();
+                continue;
+            }
+            try {
+                sent += drain(player, entry.getValue(), budget);
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("Could not send chat to " + player.getName() + ": " + e);
+            }
+        }
+        return sent;
+    }
+
+    private int drain(Player player, PlayerQueue queue, int budget) {
+        int sent = 0;
+        List<QueuedMessage> merging = new ArrayList<QueuedMessage>(maxMerged);
+        int mergingSize = 0;
+        // Entries read from the head of the queue are only polled once they were sent or deduplicated.
+        int taken = 0;
+        int duplicates = 0;
+        QueuedMessage last = null;
+        for (QueuedMessage entry : queue.entries) {
+            if (last != null && entry.isSame(last)) {
+                taken++;
+                duplicates++;
+                continue;
+            }
+            if (entry.isMergeable() && !merging.isEmpty() && merging.size() < maxMerged
+                && mergingSize + MERGED_SEPARATOR_SIZE + entry.size + MERGED_END_SIZE
+                   <= FancyMessage.getSizeLimit().getMaxBytes()) {
+                merging.add(entry);
+                mergingSize += MERGED_SEPARATOR_SIZE + entry.size;
+                taken++;
+                last = entry;
+                continue;
+            }
+            int cost = entry.isMergeable() ? 1 : entry.packets.size();
+            int used = sent + (merging.isEmpty() ? 0 : 1);
+            if (used > 0 && used + cost > budget) {
+                break; // A message larger than the budget is still sent on its own, so it can not block the queue.
+            }
+            sent += send(player, merging);
+            poll(queue, taken, duplicates);
+            merging.clear();
+            taken = 0;
+            duplicates = 0;
+            last = entry;
+            if (entry.isMergeable()) {
+                merging.add(entry);
+                mergingSize = MERGED_START_SIZE + entry.size;
+                taken = 1;
+            } else {
+                FancyMessage.sendPackets(player, entry.packets);
+                poll(queue, 1, 0);
+                sent += cost;
+            }
+        }
+        sent += send(player, merging);
+        poll(queue, taken, duplicates);
+        return sent;
+    }
+
+    private void poll(PlayerQueue queue, int entries, int duplicates) {
+        for (int i = 0; i < entries; i++) {
+            queue.entries.poll();
+        }
+        queue.size.addAndGet(-entries);
+        deduplicated.addAndGet(duplicates);
+    }
+
+    /**
+     * Sends merged entries as a single packet, and returns the amount of packets sent.
+     */
+    private int send(Player player, List<QueuedMessage> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        if (entries.size() == 1) {
+            QueuedMessage entry = entries.get(0);
+            List<Object> packets = entry.packets;
+            if (packets == null) {
+                packets = new ChatPackets(new Object[]{NMSBridge.createChatPacket(entry.json)}, entry.size);
+                SizeStatistics.getGlobal().record(entry.size, entry.json);
+            }
+            FancyMessage.sendPackets(player, packets);
+            return packets.size();
+        }
+        StringBuilder json = ComponentEncoder.borrowBuilder().append(MERGED_START);
+        int size = MERGED_START_SIZE + MERGED_END_SIZE;
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                json.append(MERGED_SEPARATOR);
+                size += MERGED_SEPARATOR_SIZE;
+            }
+            json.append(entries.get(i).json);
+            size += entries.get(i).size;
+        }
+        String jsonString = json.append(ComponentEncoder.EXTRA_END).toString();
+        SizeStatistics.getGlobal().record(size, jsonString);
+        FancyMessage.sendPackets(player, new ChatPackets(new Object[]{NMSBridge.createChatPacket(jsonString)}, size));
+        merged.addAndGet(entries.size() - 1);
+        return 1;
+    }
+
+    /**
+     * Gets the amount of messages queued for a {@link Player}.
+     *
+     * @param player player to get the amount of queued messages of
+     * @return amount of queued messages
+     */
+    public int getQueued(Player player) {
+        Validate.notNull(player, "player cannot be null.");
+        PlayerQueue queue = queues.get(player);
+        return queue == null ? 0 : queue.size.get();
+    }
+
+    /**
+     * Gets the amount of messages that were dropped because they had the same JSON as the message before them.
+     *
+     * @return amount of deduplicated messages
+     */
+    public long getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    /**
+     * Gets the amount of packets that were saved by merging messages.
+     *
+     * @return amount of merged messages, not counting the first message of every merged packet
+     */
+    public long getMerged() {
+        return merged.get();
+    }
+
+    /**
+     * Gets the amount of messages that were dropped because a player's queue was full.
+     *
+     * @return amount of dropped messages
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops draining the queues every tick and sends every queued message, regardless of the budget. This must be
+     * called on the main thread.
+     */
+    public synchronized void shutdown() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Holds the queued messages of a single player.
+     */
+    private static final class PlayerQueue {
+
+        private final Queue<QueuedMessage> entries = new ConcurrentLinkedQueue<QueuedMessage>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+
+    /**
+     * Represents a queued message.
+     */
+    private static final class QueuedMessage {
+
+        private final String json;
+        private final int hash;
+        private final int size;
+        private final List<Object> packets; // Null until the message is sent, unless it could not be merged.
+
+        private QueuedMessage(String json, int size, List<Object> packets) {
+            this.json = json;
+            this.hash = json.hashCode();
+            this.size = size;
+            this.packets = packets;
+        }
+
+        private boolean isMergeable() {
+            return size <= FancyMessage.getSizeLimit().getMaxBytes() && (packets == null || packets.size() == 1);
+        }
+
+        private boolean isSame(QueuedMessage other) {
+            return hash == other.hash && json.equals(other.json);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.supaham.supachatapi.fanciful;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the maximum size of a chat packet, and what to do with messages that exceed it. The client disconnects
+ * when it receives a chat packet larger than {@link #MAX_PACKET_BYTES}.
+ * <p/>
+ * Sizes are estimated with {@link ComponentEncoder#estimateSize(CharSequence)}, and recorded in
+ * {@link SizeStatistics#getGlobal()}.
+ *
+ * @see FancyMessage#setSizeLimit(SizeLimit)
+ */
+public final class SizeLimit {
+
+    /**
+     * The maximum size of the JSON in a chat packet, in bytes.
+     */
+    public static final int MAX_PACKET_BYTES = 32767;
+
+    /**
+     * The default SizeLimit, which rejects messages larger than {@link #MAX_PACKET_BYTES}.
+     */
+    public static final SizeLimit DEFAULT = new SizeLimit(MAX_PACKET_BYTES, Policy.REJECT);
+
+    /**
+     * Size of {@code {"text":"","extra":[]}}, the component that holds the parts of a message.
+     */
+    private static final int EXTRA_OVERHEAD = 22;
+
+    private final int maxBytes;
+    private final Policy policy;
+
+    /**
+     * Constructs a new SizeLimit.
+     *
+     * @param maxBytes maximum size of a message, between 64 and {@link #MAX_PACKET_BYTES}
+     * @param policy   what to do with messages larger than {@code maxBytes}
+     */
+    public SizeLimit(int maxBytes, Policy policy) {
+        Validate.isTrue(maxBytes >= 64 && maxBytes <= MAX_PACKET_BYTES,
+                        "maxBytes must be between 64 and " + MAX_PACKET_BYTES + ".");
+        Validate.notNull(policy, "policy cannot be null.");
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * Gets the maximum size of a message.
+     *
+     * @return maximum size in bytes
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets what is done with messages larger than {@link #getMaxBytes()}.
+     *
+     * @return the policy
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Enforces this limit on a message.
+     *
+     * @param message message to enforce this limit on
+     * @return the JSON of every chat packet to send, in order
+     * @throws IllegalStateException thrown if the message is too large and the policy is {@link Policy#REJECT}
+     */
+    List<String> enforce(FancyMessage message) throws IllegalStateException {
+        String json = message.toJSONString();
+        int size = ComponentEncoder.estimateSize(json);
+        SizeStatistics.getGlobal().record(size, json);
+        if (size <= maxBytes) {
+            return Collections.singletonList(json);
+        }
+
+        SizeStatistics.getGlobal().recordEnforced(policy);
+        if (policy == Policy.REJECT) {
+            throw new IllegalStateException("Message is about " + size + " bytes, which exceeds the limit of "
+                                            + maxBytes + " bytes");
+        }
+        List<List<MessagePart>> chunks = split(message.getMessageParts(), policy == Policy.TRUNCATE ? 1 : -1);
+        List<String> packets = new ArrayList<String>(chunks.size());
+        for (List<MessagePart> chunk : chunks) {
+            packets.add(new FancyMessage(chunk).toJSONString());
+        }
+        return packets;
+    }
+
+    /**
+     * Splits parts into chunks that each fit this limit. Parts that do not fit on their own are shrunk.
+     *
+     * @param maxChunks maximum amount of chunks, or -1 for no maximum
+     */
+    private List<List<MessagePart>> split(List<MessagePart> parts, int maxChunks) {
+        List<List<MessagePart>> chunks = new ArrayList<List<MessagePart>>();
+        List<MessagePart> chunk = new ArrayList<MessagePart>();
+        int chunkSize = EXTRA_OVERHEAD;
+        for (MessagePart part : parts) {
+            int size = sizeOf(part);
+            if (EXTRA_OVERHEAD + size + 1 > maxBytes) {
+                part = shrink(part, maxBytes - EXTRA_OVERHEAD - 1);
+                size = sizeOf(part);
+            }
+            if (!chunk.isEmpty() && chunkSize + size + 1 > maxBytes) {
+                chunks.add(chunk);
+                if (chunks.size() == maxChunks) {
+                    return chunks;
+                }
+                chunk = new ArrayList<MessagePart>();
+                chunkSize = EXTRA_OVERHEAD;
+            }
+            chunk.add(part);
+            chunkSize += size + 1;
+        }
+        chunks.add(chunk);
+        return chunks;
+    }
+
+    /**
+     * Removes the events of a part, and then the end of its text, until it fits in the given size.
+     */
+    private static MessagePart shrink(MessagePart part, int maxBytes) {
+        MessagePart shrunk = part.copy();
+        shrunk.style = shrunk.style.withHoverEvent(null, null);
+        if (sizeOf(shrunk) <= maxBytes) {
+            return shrunk;
+        }
+        shrunk.style = shrunk.style.withClickEvent(null, null);
+        String text = shrunk.text;
+        shrunk.text = "";
+        int budget = maxBytes - sizeOf(shrunk);
+        int end = 0;
+        while (end < text.length() && (budget -= ComponentEncoder.estimateSize(text.charAt(end))) >= 0) {
+            end++;
+        }
+        if (end > 0 && end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--; // Do not split a surrogate pair.
+        }
+        shrunk.text = text.substring(0, end);
+        return shrunk;
+    }
+
+    private static int sizeOf(MessagePart part) {
+        StringBuilder json = ComponentEncoder.borrowBuilder();
+        part.writeJson(json);
+        return ComponentEncoder.estimateSize(json);
+    }
+
+    /**
+     * Represents what is done with a message that exceeds a {@link SizeLimit}.
+     */
+    public enum Policy {
+        /**
+         * The message is not sent, and sending it throws an {@link IllegalStateException}.
+         */
+        REJECT,
+        /**
+         * The parts that fit are sent, the rest is left out. A part that does not fit on its own loses its events and
+         * the end of its text.
+         */
+        TRUNCATE,
+        /**
+         * The message is sent as multiple chat packets that each fit. A part that does not fit on its own loses its
+         * events and the end of its text.
+         */
+        SPLIT
+    }
+}
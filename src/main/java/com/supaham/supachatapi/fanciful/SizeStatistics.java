@@ -0,0 +1,183 @@
+package com.supaham.supachatapi.fanciful;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Represents a histogram of the sizes of the chat messages that were sent, and of how often the {@link SizeLimit} was
+ * enforced. All methods are thread-safe.
+ *
+ * @see #getGlobal()
+ */
+public final class SizeStatistics {
+
+    /**
+     * The upper bounds, exclusive, of every bucket but the last, in bytes. The last bucket holds every larger message.
+     */
+    private static final int[] BOUNDS = {64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768};
+    private static final int SAMPLE_LENGTH = 100;
+    private static final SizeStatistics GLOBAL = new SizeStatistics();
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final AtomicLong split = new AtomicLong();
+    private volatile Largest largest = new Largest(0, null);
+
+    /**
+     * Gets the statistics of every message sent by this library.
+     *
+     * @return the global SizeStatistics
+     */
+    public static SizeStatistics getGlobal() {
+        return GLOBAL;
+    }
+
+    void record(int bytes, String json) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && bytes >= BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        totalBytes.addAndGet(bytes);
+        if (bytes > largest.bytes) {
+            synchronized (this) {
+                if (bytes > largest.bytes) {
+                    String sample = json.length() > SAMPLE_LENGTH ? json.substring(0, SAMPLE_LENGTH) + "..." : json;
+                    largest = new Largest(bytes, sample);
+                }
+            }
+        }
+    }
+
+    void recordEnforced(SizeLimit.Policy policy) {
+        switch (policy) {
+            case REJECT:
+                rejected.incrementAndGet();
+                break;
+            case TRUNCATE:
+                truncated.incrementAndGet();
+                break;
+            case SPLIT:
+                split.incrementAndGet();
+                break;
+        }
+    }
+
+    /**
+     * Gets the upper bounds, exclusive, of the buckets returned by {@link #getBuckets()}, in bytes. There is one bucket
+     * more than there are bounds, which holds every larger message.
+     *
+     * @return a copy of the bucket bounds
+     */
+    public int[] getBucketBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Gets the amount of messages in every bucket.
+     *
+     * @return a new array of message counts
+     * @see #getBucketBounds()
+     */
+    public long[] getBuckets() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the amount of messages recorded.
+     *
+     * @return amount of messages
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the total size of all recorded messages.
+     *
+     * @return total size in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Gets the size of the largest recorded message.
+     *
+     * @return size in bytes
+     */
+    public int getLargestBytes() {
+        return largest.bytes;
+    }
+
+    /**
+     * Gets the start of the JSON of the largest recorded message, which helps finding where it came from.
+     *
+     * @return start of the JSON, nullable
+     */
+    public String getLargestSample() {
+        return largest.sample;
+    }
+
+    /**
+     * Gets the amount of messages that were rejected for exceeding the size limit.
+     *
+     * @return amount of rejected messages
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the amount of messages that were truncated for exceeding the size limit.
+     *
+     * @return amount of truncated messages
+     */
+    public long getTruncated() {
+        return truncated.get();
+    }
+
+    /**
+     * Gets the amount of messages that were split for exceeding the size limit.
+     *
+     * @return amount of split messages
+     */
+    public long getSplit() {
+        return split.get();
+    }
+
+    /**
+     * Resets all statistics.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        totalBytes.set(0);
+        rejected.set(0);
+        truncated.set(0);
+        split.set(0);
+        largest = new Largest(0, null);
+    }
+
+    private static final class Largest {
+
+        private final int bytes;
+        private final String sample;
+
+        private Largest(int bytes, String sample) {
+            this.bytes = bytes;
+            this.sample = sample;
+        }
+    }
+}
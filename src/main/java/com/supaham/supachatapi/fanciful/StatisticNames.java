@@ -0,0 +1,201 @@
+package com.supaham.supachatapi.fanciful;
+
+import com.supaham.supachatapi.util.ReflectionUtil;
+import org.bukkit.Achievement;
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Contains the NMS names of every {@link Achievement} and {@link Statistic}, as used by {@code show_achievement} hover
+ * events.
+ * <p/>
+ * The names are resolved through CraftBukkit once, when this class is first used or {@link #load()} is called, and
+ * kept in read-only {@link EnumMap}s, so looking a name up costs no reflection. If they can not be resolved on this
+ * server version, {@link #load()} and every lookup throw an {@link IllegalStateException} with the cause.
+ */
+public final class StatisticNames {
+
+    private StatisticNames() {
+    }
+
+    /**
+     * Resolves all names now, instead of on first use. Plugins may call this while enabling to keep the cost off the
+     * first message that needs a name.
+     *
+     * @throws IllegalStateException thrown if the CraftBukkit statistic methods could not be resolved
+     */
+    public static void load() throws IllegalStateException {
+        Tables.check();
+    }
+
+    /**
+     * Gets the name of an {@link Achievement}.
+     *
+     * @param achievement achievement to get the name of
+     * @return the name, nullable
+     * @throws IllegalStateException thrown if the CraftBukkit statistic methods could not be resolved
+     */
+    public static String getName(Achievement achievement) throws IllegalStateException {
+        Tables.check();
+        return Tables.ACHIEVEMENTS.get(achievement);
+    }
+
+    /**
+     * Gets the name of an untyped {@link Statistic}.
+     *
+     * @param statistic statistic to get the name of
+     * @return the name, nullable
+     * @throws IllegalStateException thrown if the CraftBukkit statistic methods could not be resolved
+     */
+    public static String getName(Statistic statistic) throws IllegalStateException {
+        Tables.check();
+        return Tables.STATISTICS.get(statistic);
+    }
+
+    /**
+     * Gets the name of a block or item {@link Statistic} of a {@link Material}.
+     *
+     * @param statistic statistic to get the name of
+     * @param material  material of the statistic
+     * @return the name, nullable
+     * @throws IllegalStateException thrown if the CraftBukkit statistic methods could not be resolved
+     */
+    public static String getName(Statistic statistic, Material material) throws IllegalStateException {
+        Tables.check();
+        Map<Material, String> names = Tables.MATERIAL_STATISTICS.get(statistic);
+        return names == null ? null : names.get(material);
+    }
+
+    /**
+     * Gets the name of an entity {@link Statistic} of an {@link EntityType}.
+     *
+     * @param statistic statistic to get the name of
+     * @param entity    entity type of the statistic
+     * @return the name, nullable
+     * @throws IllegalStateException thrown if the CraftBukkit statistic methods could not be resolved
+     */
+    public static String getName(Statistic statistic, EntityType entity) throws IllegalStateException {
+        Tables.check();
+        Map<EntityType, String> names = Tables.ENTITY_STATISTICS.get(statistic);
+        return names == null ? null : names.get(entity);
+    }
+
+    /**
+     * Fills the tables when it is first used. A failure is kept instead of thrown, so that this class always
+     * initializes and every use reports the same cause.
+     */
+    private static final class Tables {
+
+        private static final Map<Achievement, String> ACHIEVEMENTS = new EnumMap<Achievement, String>(Achievement.class);
+        private static final Map<Statistic, String> STATISTICS = new EnumMap<Statistic, String>(Statistic.class);
+        private static final Map<Statistic, Map<Material, String>> MATERIAL_STATISTICS =
+                new EnumMap<Statistic, Map<Material, String>>(Statistic.class);
+        private static final Map<Statistic, Map<EntityType, String>> ENTITY_STATISTICS =
+                new EnumMap<Statistic, Map<EntityType, String>>(Statistic.class);
+        private static final IllegalStateException FAILURE = fill(); // Declared last, as it fills the tables above.
+
+        private static void check() throws IllegalStateException {
+            if (FAILURE != null) {
+                throw new IllegalStateException("Achievement and statistic names are unavailable: "
+                                                + FAILURE.getMessage(), FAILURE);
+            }
+        }
+
+        private static IllegalStateException fill() {
+            try {
+                Class<?> craftStatistic = ReflectionUtil.getOBCClass("CraftStatistic");
+                Class<?> nmsStatistic = ReflectionUtil.getNMSClass("Statistic");
+                if (craftStatistic == null || nmsStatistic == null) {
+                    throw new IllegalStateException("Could not resolve the statistic classes for version "
+                                                    + ReflectionUtil.getVersion());
+                }
+                Method getNMSAchievementMethod = require(ReflectionUtil.getMethod(craftStatistic, "getNMSAchievement",
+                                                                                  Achievement.class),
+                                                         "getNMSAchievement");
+                Method getNMSStatisticMethod = require(ReflectionUtil.getMethod(craftStatistic, "getNMSStatistic",
+                                                                                Statistic.class), "getNMSStatistic");
+                Method getMaterialStatisticMethod = require(ReflectionUtil.getMethod(craftStatistic,
+                                                                                     "getMaterialStatistic",
+                                                                                     Statistic.class, Material.class),
+                                                            "getMaterialStatistic");
+                Method getEntityStatisticMethod = require(ReflectionUtil.getMethod(craftStatistic,
+                                                                                   "getEntityStatistic",
+                                                                                   Statistic.class, EntityType.class),
+                                                          "getEntityStatistic");
+                // Achievements are statistics, so this field holds the name of both.
+                Field nameField = require(ReflectionUtil.getField(nmsStatistic, "name"), "Statistic.name");
+
+                for (Achievement achievement : Achievement.values()) {
+                    put(ACHIEVEMENTS, achievement, name(nameField, getNMSAchievementMethod, achievement));
+                }
+                for (Statistic statistic : Statistic.values()) {
+                    switch (statistic.getType()) {
+                        case UNTYPED:
+                            put(STATISTICS, statistic, name(nameField, getNMSStatisticMethod, statistic));
+                            break;
+                        case BLOCK:
+                        case ITEM:
+                            Map<Material, String> materials = new EnumMap<Material, String>(Material.class);
+                            for (Material material : Material.values()) {
+                                if (statistic.getType() == Statistic.Type.ITEM || material.isBlock()) {
+                                    put(materials, material,
+                                        name(nameField, getMaterialStatisticMethod, statistic, material));
+                                }
+                            }
+                            MATERIAL_STATISTICS.put(statistic, materials);
+                            break;
+                        case ENTITY:
+                            Map<EntityType, String> entities = new EnumMap<EntityType, String>(EntityType.class);
+                            for (EntityType entity : EntityType.values()) {
+                                put(entities, entity, name(nameField, getEntityStatisticMethod, statistic, entity));
+                            }
+                            ENTITY_STATISTICS.put(statistic, entities);
+                            break;
+                    }
+                }
+                return null;
+            } catch (IllegalStateException e) {
+                return e;
+            } catch (RuntimeException e) {
+                return new IllegalStateException("Could not resolve the statistic names", e);
+            } catch (LinkageError e) { // Thrown if ReflectionUtil could not determine the server version.
+                return new IllegalStateException("Could not resolve the statistic names", e);
+            }
+        }
+
+        private static <K> void put(Map<K, String> map, K key, String name) {
+            if (name != null) {
+                map.put(key, name);
+            }
+        }
+
+        /**
+         * Gets the name of the NMS statistic returned by a CraftStatistic method, or null if there is none.
+         */
+        private static String name(Field nameField, Method method, Object... args) {
+            try {
+                Object statistic = method.invoke(null, args);
+                return statistic == null ? null : (String) nameField.get(statistic);
+            } catch (InvocationTargetException e) {
+                return null; // CraftBukkit has no statistic for these arguments.
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Could not read Statistic.name", e);
+            }
+        }
+
+        private static <T> T require(T resolved, String description) {
+            if (resolved == null) {
+                throw new IllegalStateException("Could not resolve " + description + " for version "
+                                                + ReflectionUtil.getVersion());
+            }
+            return resolved;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.supaham.supachatapi.util;
+
+import org.apache.commons.lang.Validate;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining bytes of a {@link ByteBuffer}, such as a mapped file, without copying them. The position of the
+ * buffer is advanced as bytes are read, and {@link #available()} is the amount of bytes left.
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructs a new ByteBufferInputStream.
+     *
+     * @param buffer buffer to read from
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        Validate.notNull(buffer, "buffer cannot be null.");
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        len = Math.min(len, buffer.remaining());
+        buffer.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
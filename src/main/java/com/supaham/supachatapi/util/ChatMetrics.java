@@ -0,0 +1,307 @@
+package com.supaham.supachatapi.util;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Represents counters and latency histograms of the hot paths of this library: parsing, serializing, converting and
+ * sending messages.
+ * <p/>
+ * Recording costs two {@link System#nanoTime()} calls and a few uncontended atomic adds on {@link StripedCounter}s,
+ * and takes no locks, so the metrics are enabled by default. Latencies are kept in power of two buckets, so
+ * percentiles are upper bounds within a factor of two. All methods are thread-safe.
+ *
+ * @see #getGlobal()
+ */
+public final class ChatMetrics {
+
+    /**
+     * The amount of latency buckets. Bucket {@code i} holds latencies below {@code 2^i} nanoseconds, the last bucket
+     * holds every larger latency.
+     */
+    public static final int BUCKETS = 40;
+
+    private static final ChatMetrics GLOBAL = new ChatMetrics();
+
+    private static final int COUNT = 0, FAILURES = 1, NANOS = 2, FIRST_BUCKET = 3;
+    private static final int PACKETS = 0, BYTES = 1;
+
+    private final StripedCounter[] operations = new StripedCounter[Operation.values().length];
+    private final StripedCounter caches = new StripedCounter(Cache.values().length * 2);
+    private final StripedCounter sent = new StripedCounter(2);
+    private volatile boolean enabled = true;
+
+    /**
+     * Constructs a new ChatMetrics.
+     */
+    public ChatMetrics() {
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new StripedCounter(FIRST_BUCKET + BUCKETS);
+        }
+    }
+
+    /**
+     * Gets the metrics of every message handled by this library.
+     *
+     * @return the global ChatMetrics
+     */
+    public static ChatMetrics getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * Checks whether these metrics are recorded.
+     *
+     * @return whether these metrics are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether these metrics are recorded.
+     *
+     * @param enabled whether to record these metrics
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return the start time to pass to {@link #stop(Operation, long, boolean)}, or 0 if these metrics are disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing an operation and records it.
+     *
+     * @param operation operation that was timed
+     * @param start     start time returned by {@link #start()}
+     * @param failed    whether the operation failed
+     */
+    public void stop(Operation operation, long start, boolean failed) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        StripedCounter counter = operations[operation.ordinal()];
+        counter.increment(COUNT);
+        if (failed) {
+            counter.increment(FAILURES);
+        }
+        counter.add(NANOS, nanos);
+        counter.increment(FIRST_BUCKET + bucket(nanos));
+    }
+
+    /**
+     * Records a cache lookup.
+     *
+     * @param cache cache that was looked up
+     * @param hit   whether the lookup was a hit
+     */
+    public void recordCache(Cache cache, boolean hit) {
+        if (enabled) {
+            caches.increment(cache.ordinal() * 2 + (hit ? 0 : 1));
+        }
+    }
+
+    /**
+     * Records chat packets that were sent to a player.
+     *
+     * @param packets amount of packets
+     * @param bytes   estimated size of the packets in bytes
+     */
+    public void recordSent(int packets, long bytes) {
+        if (enabled) {
+            sent.add(PACKETS, packets);
+            sent.add(BYTES, bytes);
+        }
+    }
+
+    /**
+     * Gets the amount of times an operation was recorded.
+     *
+     * @param operation operation to get the count of
+     * @return amount of operations
+     */
+    public long getCount(Operation operation) {
+        return operations[operation.ordinal()].sum(COUNT);
+    }
+
+    /**
+     * Gets the amount of times an operation failed.
+     *
+     * @param operation operation to get the failures of
+     * @return amount of failed operations
+     */
+    public long getFailures(Operation operation) {
+        return operations[operation.ordinal()].sum(FAILURES);
+    }
+
+    /**
+     * Gets the total time spent in an operation.
+     *
+     * @param operation operation to get the total time of
+     * @return total time in nanoseconds
+     */
+    public long getTotalNanos(Operation operation) {
+        return operations[operation.ordinal()].sum(NANOS);
+    }
+
+    /**
+     * Gets the mean latency of an operation.
+     *
+     * @param operation operation to get the mean latency of
+     * @return mean latency in nanoseconds, or 0 if it was never recorded
+     */
+    public long getMeanNanos(Operation operation) {
+        long count = getCount(operation);
+        return count == 0 ? 0 : getTotalNanos(operation) / count;
+    }
+
+    /**
+     * Gets the latency histogram of an operation.
+     *
+     * @param operation operation to get the histogram of
+     * @return a new array of {@link #BUCKETS} operation counts
+     */
+    public long[] getHistogram(Operation operation) {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = operations[operation.ordinal()].sum(FIRST_BUCKET + i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets an upper bound of a latency percentile of an operation.
+     *
+     * @param operation  operation to get the percentile of
+     * @param percentile percentile to get, between 0 and 100
+     * @return upper bound of the percentile in nanoseconds, or 0 if the operation was never recorded
+     */
+    public long getPercentileNanos(Operation operation, double percentile) {
+        Validate.isTrue(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100.");
+        long[] histogram = getHistogram(operation);
+        long count = 0;
+        for (long bucket : histogram) {
+            count += bucket;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets the amount of hits of a cache.
+     *
+     * @param cache cache to get the hits of
+     * @return amount of hits
+     */
+    public long getCacheHits(Cache cache) {
+        return caches.sum(cache.ordinal() * 2);
+    }
+
+    /**
+     * Gets the amount of misses of a cache.
+     *
+     * @param cache cache to get the misses of
+     * @return amount of misses
+     */
+    public long getCacheMisses(Cache cache) {
+        return caches.sum(cache.ordinal() * 2 + 1);
+    }
+
+    /**
+     * Gets the hit rate of a cache.
+     *
+     * @param cache cache to get the hit rate of
+     * @return hit rate between 0 and 1, or 0 if the cache was never looked up
+     */
+    public double getCacheHitRate(Cache cache) {
+        long hits = getCacheHits(cache);
+        long total = hits + getCacheMisses(cache);
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Gets the amount of chat packets sent to players.
+     *
+     * @return amount of packets
+     */
+    public long getPacketsSent() {
+        return sent.sum(PACKETS);
+    }
+
+    /**
+     * Gets the estimated size of all chat packets sent to players.
+     *
+     * @return size in bytes
+     */
+    public long getBytesSent() {
+        return sent.sum(BYTES);
+    }
+
+    /**
+     * Resets all metrics.
+     */
+    public void reset() {
+        for (StripedCounter counter : operations) {
+            counter.reset();
+        }
+        caches.reset();
+        sent.reset();
+    }
+
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    /**
+     * Represents a timed operation.
+     */
+    public enum Operation {
+        /**
+         * Parsing a source with a {@link com.supaham.supachatapi.Parser}.
+         */
+        PARSE,
+        /**
+         * Serializing a {@link com.supaham.supachatapi.fanciful.FancyMessage} to JSON.
+         */
+        SERIALIZE,
+        /**
+         * Converting a legacy String with {@link com.supaham.supachatapi.SafeFancyMessage}.
+         */
+        CONVERT,
+        /**
+         * Sending a message's packets to a single player.
+         */
+        SEND
+    }
+
+    /**
+     * Represents a cache whose hit rate is recorded.
+     */
+    public enum Cache {
+        /**
+         * The compiled template caches of the XML parsers.
+         */
+        TEMPLATE,
+        /**
+         * The JSON a {@link com.supaham.supachatapi.fanciful.FancyMessage} keeps until it is changed.
+         */
+        JSON
+    }
+}
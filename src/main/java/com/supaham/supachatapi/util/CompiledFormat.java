@@ -0,0 +1,269 @@
+package com.supaham.supachatapi.util;
+
+import org.apache.commons.lang.Validate;
+
+import java.math.BigInteger;
+import java.util.Formattable;
+import java.util.IllegalFormatConversionException;
+import java.util.MissingFormatArgumentException;
+
+/**
+ * Represents a {@link String#format(String, Object...)} pattern that has been split into literal segments and
+ * parameter slots once, so that formatting it only substitutes the params.
+ * <p/>
+ * The {@code %s}, {@code %d}, {@code %n$s}, {@code %n$d}, {@code %%} and {@code %n} specifiers are compiled into
+ * slots. Patterns using any other specifier, flag, width or precision are formatted with
+ * {@link String#format(String, Object...)}, so every pattern produces the same output it always has. The only
+ * difference is that {@code %d} always writes ASCII digits, regardless of the default locale.
+ * <p/>
+ * Patterns compiled with {@link #compileSlots(String)} only substitute the {@code %s}, {@code %d}, {@code %n$s} and
+ * {@code %n$d} slots, and keep every other {@code %} as written, so they never fail on text that was not meant as a
+ * pattern.
+ */
+public final class CompiledFormat {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final String pattern;
+    private final String[] literals; // One more than slots, null if this pattern is not compiled.
+    private final int[] indexes;
+    private final char[] conversions;
+    private final String[] specifiers;
+    private final int literalLength;
+
+    private CompiledFormat(String pattern, String[] literals, int[] indexes, char[] conversions,
+                           String[] specifiers) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.indexes = indexes;
+        this.conversions = conversions;
+        this.specifiers = specifiers;
+        int literalLength = 0;
+        if (literals != null) {
+            for (String literal : literals) {
+                literalLength += literal.length();
+            }
+        }
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * Compiles a pattern.
+     *
+     * @param pattern pattern to compile
+     * @return the compiled pattern
+     */
+    public static CompiledFormat compile(String pattern) {
+        return compile(pattern, false);
+    }
+
+    /**
+     * Compiles a pattern whose only specifiers are the {@code %s}, {@code %d}, {@code %n$s} and {@code %n$d} slots.
+     * Every other {@code %}, including {@code %%}, is kept as written.
+     *
+     * @param pattern pattern to compile
+     * @return the compiled pattern
+     */
+    public static CompiledFormat compileSlots(String pattern) {
+        return compile(pattern, true);
+    }
+
+    private static CompiledFormat compile(String pattern, boolean slotsOnly) {
+        Validate.notNull(pattern, "pattern cannot be null.");
+        if (pattern.indexOf('%') < 0) {
+            return new CompiledFormat(pattern, new String[]{pattern}, new int[0], new char[0], new String[0]);
+        }
+
+        int length = pattern.length();
+        int slots = 0;
+        String[] literals = new String[4];
+        int[] indexes = new int[3];
+        char[] conversions = new char[3];
+        String[] specifiers = new String[3];
+        StringBuilder literal = new StringBuilder(length);
+        int ordinary = 0;
+        int i = 0;
+        while (i < length) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            int start = i++;
+            if (i >= length) {
+                if (slotsOnly) {
+                    literal.append('%');
+                    continue;
+                }
+                return uncompiled(pattern);
+            }
+            c = pattern.charAt(i);
+            if (c == '%') {
+                literal.append(slotsOnly ? "%%" : "%");
+                i++;
+                continue;
+            } else if (slotsOnly && c == 'n') {
+                literal.append('%');
+                continue;
+            } else if (c == 'n') {
+                literal.append(LINE_SEPARATOR);
+                i++;
+                continue;
+            }
+
+            int index;
+            int digits = i;
+            while (i < length && pattern.charAt(i) >= '0' && pattern.charAt(i) <= '9') {
+                i++;
+            }
+            boolean slot = true;
+            if (i > digits) {
+                // Only an explicit argument index may follow the '%', anything else is a flag or a width.
+                slot = i - digits <= 9 && i < length && pattern.charAt(i) == '$' && pattern.charAt(digits) != '0';
+                i++;
+            }
+            slot = slot && i < length && (pattern.charAt(i) == 's' || pattern.charAt(i) == 'd');
+            if (!slot) {
+                if (!slotsOnly) {
+                    return uncompiled(pattern);
+                }
+                // Kept as written, and everything after the '%' is scanned again.
+                literal.append('%');
+                i = start + 1;
+                continue;
+            }
+            if (i > digits + 1) {
+                index = Integer.parseInt(pattern.substring(digits, i - 1)) - 1;
+            } else {
+                index = ordinary++;
+            }
+            c = pattern.charAt(i++);
+
+            if (slots == indexes.length) {
+                int size = slots * 2;
+                literals = grow(literals, size + 1);
+                indexes = grow(indexes, size);
+                conversions = grow(conversions, size);
+                specifiers = grow(specifiers, size);
+            }
+            literals[slots] = literal.toString();
+            indexes[slots] = index;
+            conversions[slots] = c;
+            specifiers[slots] = pattern.substring(start, i);
+            slots++;
+            literal.setLength(0);
+        }
+        literals[slots] = literal.toString();
+        return new CompiledFormat(pattern, grow(literals, slots + 1), grow(indexes, slots), grow(conversions, slots),
+                                  grow(specifiers, slots));
+    }
+
+    /**
+     * Formats this pattern with params.
+     *
+     * @param params params to replace
+     * @return the formatted String
+     * @see String#format(String, Object...)
+     */
+    public String format(Object... params) {
+        if (literals == null) {
+            return String.format(pattern, params);
+        }
+        if (indexes.length == 0) {
+            return literals[0];
+        }
+        StringBuilder out = new StringBuilder(literalLength + 16 * indexes.length);
+        out.append(literals[0]);
+        for (int i = 0; i < indexes.length; i++) {
+            int index = indexes[i];
+            if (params != null && index >= params.length) {
+                throw new MissingFormatArgumentException(specifiers[i]);
+            }
+            Object param = params == null ? null : params[index];
+            if (param == null) {
+                out.append("null");
+            } else if (conversions[i] == 's') {
+                if (param instanceof Formattable) {
+                    out.append(String.format("%s", param));
+                } else {
+                    out.append(param.toString());
+                }
+            } else if (param instanceof Integer || param instanceof Long || param instanceof Short
+                       || param instanceof Byte) {
+                out.append(((Number) param).longValue());
+            } else if (param instanceof BigInteger) {
+                out.append(param.toString());
+            } else {
+                throw new IllegalFormatConversionException('d', param.getClass());
+            }
+            out.append(literals[i + 1]);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Checks whether this pattern formats to the same String regardless of params.
+     *
+     * @return whether this pattern has no parameter slots
+     */
+    public boolean isConstant() {
+        return literals != null && indexes.length == 0;
+    }
+
+    /**
+     * Gets the amount of params this pattern substitutes, if it substitutes every one of them as {@code %s} would.
+     *
+     * @return one more than the highest param index used, or -1 if this pattern has a {@code %d} slot or is not
+     * compiled
+     */
+    public int getStringArity() {
+        if (literals == null) {
+            return -1;
+        }
+        int arity = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (conversions[i] != 's') {
+                return -1;
+            }
+            arity = Math.max(arity, indexes[i] + 1);
+        }
+        return arity;
+    }
+
+    /**
+     * Gets the pattern this format was compiled from.
+     *
+     * @return the pattern
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private static CompiledFormat uncompiled(String pattern) {
+        return new CompiledFormat(pattern, null, null, null, null);
+    }
+
+    private static String[] grow(String[] array, int size) {
+        String[] grown = new String[size];
+        System.arraycopy(array, 0, grown, 0, Math.min(array.length, size));
+        return grown;
+    }
+
+    private static int[] grow(int[] array, int size) {
+        int[] grown = new int[size];
+        System.arraycopy(array, 0, grown, 0, Math.min(array.length, size));
+        return grown;
+    }
+
+    private static char[] grow(char[] array, int size) {
+        char[] grown = new char[size];
+        System.arraycopy(array, 0, grown, 0, Math.min(array.length, size));
+        return grown;
+    }
+}
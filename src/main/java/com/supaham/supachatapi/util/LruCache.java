@@ -0,0 +1,150 @@
+package com.supaham.supachatapi.util;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents a bounded, thread-safe cache that evicts least recently used entries once it grows past its maximum size.
+ * <p/>
+ * Entries are spread over up to {@link #MAX_SEGMENTS} segments by the hash of their key, each with its own lock and
+ * an equal share of the maximum size, so threads using different keys rarely contend. Eviction is per segment, so the
+ * evicted entry is the least recently used of its segment rather than of the whole cache.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class LruCache<K, V> {
+
+    /**
+     * The maximum amount of segments a cache is split into.
+     */
+    public static final int MAX_SEGMENTS = 16;
+
+    private final int maxSize;
+    private final Segment<K, V>[] segments;
+    private final int mask;
+
+    /**
+     * Constructs a new LruCache.
+     *
+     * @param maxSize maximum amount of entries to keep, must be larger than 0
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LruCache(int maxSize) {
+        Validate.isTrue(maxSize > 0, "maxSize must be larger than 0.");
+        this.maxSize = maxSize;
+        // Small caches get fewer segments, so that every segment still holds a few entries.
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxSize / 4)));
+        this.segments = new Segment[count];
+        this.mask = count - 1;
+        for (int i = 0; i < count; i++) {
+            // The first maxSize % count segments hold one extra entry, so the shares add up to maxSize.
+            segments[i] = new Segment<K, V>(maxSize / count + (i < maxSize % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Gets a cached value, marking it as recently used.
+     *
+     * @param key key of the value
+     * @return the cached value, nullable
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Caches a value, possibly evicting the least recently used entry of its segment.
+     *
+     * @param key   key of the value
+     * @param value value to cache
+     * @return the previous value, nullable
+     */
+    public V put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.put(key, value);
+        }
+    }
+
+    /**
+     * Removes a cached value.
+     *
+     * @param key key of the value to remove
+     * @return the removed value, nullable
+     */
+    public V remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of cached values. Values cached or removed by other threads while this method runs may or may
+     * not be counted.
+     *
+     * @return amount of cached values
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the maximum amount of values this cache keeps.
+     *
+     * @return maximum size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12); // Spreads the high bits, like HashMap, as the mask only keeps the low bits.
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & mask];
+    }
+
+    /**
+     * Represents an access-ordered share of the cache, guarded by its own monitor.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
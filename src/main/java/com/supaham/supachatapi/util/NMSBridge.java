@@ -0,0 +1,211 @@
+package com.supaham.supachatapi.util;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Provides access to the NMS chat classes that are needed to send JSON messages to players.
+ * <p/>
+ * All reflective handles are resolved once, when this class is first used. If any of them can not be resolved, every
+ * method throws a descriptive {@link IllegalStateException} with the cause instead of failing silently on every send.
+ */
+public final class NMSBridge {
+
+    private NMSBridge() {
+    }
+
+    /**
+     * Gets the NMS PlayerConnection of a {@link Player}.
+     *
+     * @param player player to get the connection of
+     * @return the player's connection
+     * @throws IllegalStateException thrown if the connection could not be retrieved
+     */
+    public static Object getConnection(Player player) throws IllegalStateException {
+        Validate.notNull(player, "player cannot be null.");
+        Handles handles = Handles.get();
+        try {
+            return handles.playerConnectionField.get(handles.getHandleMethod.invoke(player));
+        } catch (Exception e) {
+            throw failure("Could not get the connection of " + player.getName(), e);
+        }
+    }
+
+    /**
+     * Gets the locale the client of a {@link Player} has selected, such as {@code en_US}.
+     *
+     * @param player player to get the locale of
+     * @return the player's locale, or null if it is not known
+     * @throws IllegalStateException thrown if the locale could not be retrieved
+     */
+    public static String getLocale(Player player) throws IllegalStateException {
+        Validate.notNull(player, "player cannot be null.");
+        Handles handles = Handles.get();
+        if (handles.localeField == null) {
+            return null;
+        }
+        try {
+            return (String) handles.localeField.get(handles.getHandleMethod.invoke(player));
+        } catch (Exception e) {
+            throw failure("Could not get the locale of " + player.getName(), e);
+        }
+    }
+
+    /**
+     * Deserializes a JSON message into an NMS IChatBaseComponent.
+     *
+     * @param json JSON to deserialize
+     * @return the chat component
+     * @throws IllegalStateException thrown if the JSON could not be deserialized
+     */
+    public static Object serialize(String json) throws IllegalStateException {
+        Validate.notNull(json, "json cannot be null.");
+        Handles handles = Handles.get();
+        try {
+            return handles.serializeMethod.invoke(null, json);
+        } catch (Exception e) {
+            throw failure("Could not deserialize chat component " + json, e);
+        }
+    }
+
+    /**
+     * Creates an NMS PacketPlayOutChat from an NMS IChatBaseComponent.
+     *
+     * @param component chat component to send
+     * @return the chat packet
+     * @throws IllegalStateException thrown if the packet could not be created
+     * @see #serialize(String)
+     */
+    public static Object createChatPacket(Object component) throws IllegalStateException {
+        Validate.notNull(component, "component cannot be null.");
+        Handles handles = Handles.get();
+        try {
+            return handles.chatPacketConstructor.newInstance(component);
+        } catch (Exception e) {
+            throw failure("Could not create chat packet", e);
+        }
+    }
+
+    /**
+     * Creates an NMS PacketPlayOutChat from a JSON message.
+     *
+     * @param json JSON of the message to send
+     * @return the chat packet
+     * @throws IllegalStateException thrown if the packet could not be created
+     */
+    public static Object createChatPacket(String json) throws IllegalStateException {
+        return createChatPacket(serialize(json));
+    }
+
+    /**
+     * Sends an NMS packet through an NMS PlayerConnection.
+     *
+     * @param connection connection to send the packet through
+     * @param packet     packet to send
+     * @throws IllegalStateException thrown if the packet could not be sent
+     * @see #getConnection(Player)
+     */
+    public static void sendPacket(Object connection, Object packet) throws IllegalStateException {
+        Validate.notNull(connection, "connection cannot be null.");
+        Validate.notNull(packet, "packet cannot be null.");
+        Handles handles = Handles.get();
+        try {
+            handles.sendPacketMethod.invoke(connection, packet);
+        } catch (Exception e) {
+            throw failure("Could not send packet", e);
+        }
+    }
+
+    /**
+     * Sends an NMS packet to a {@link Player}.
+     *
+     * @param player player to send the packet to
+     * @param packet packet to send
+     * @throws IllegalStateException thrown if the packet could not be sent
+     */
+    public static void sendPacket(Player player, Object packet) throws IllegalStateException {
+        sendPacket(getConnection(player), packet);
+    }
+
+    private static RuntimeException failure(String message, Exception e) {
+        Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+        return new IllegalStateException(message, cause);
+    }
+
+    /**
+     * Resolves the handles when they are first used. A failure is kept instead of thrown, so that this class always
+     * initializes and every use reports the same cause.
+     */
+    private static final class Handles {
+
+        private static final Handles INSTANCE;
+        private static final IllegalStateException FAILURE;
+
+        static {
+            Handles handles = null;
+            IllegalStateException failure = null;
+            try {
+                handles = new Handles();
+            } catch (IllegalStateException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IllegalStateException("Could not resolve the NMS chat classes", e);
+            } catch (LinkageError e) { // Thrown if ReflectionUtil could not determine the server version.
+                failure = new IllegalStateException("Could not resolve the NMS chat classes", e);
+            }
+            INSTANCE = handles;
+            FAILURE = failure;
+        }
+
+        private final Method getHandleMethod;
+        private final Field playerConnectionField;
+        private final Method serializeMethod;
+        private final Constructor<?> chatPacketConstructor;
+        private final Method sendPacketMethod;
+        private final Field localeField; // Null if this version does not keep the client locale.
+
+        private Handles() {
+            Class<?> craftPlayer = require(ReflectionUtil.getOBCClass("entity.CraftPlayer"), "CraftPlayer");
+            Class<?> entityPlayer = require(ReflectionUtil.getNMSClass("EntityPlayer"), "EntityPlayer");
+            Class<?> chatSerializer = require(ReflectionUtil.getNMSClass("ChatSerializer"), "ChatSerializer");
+            Class<?> chatComponent = require(ReflectionUtil.getNMSClass("IChatBaseComponent"), "IChatBaseComponent");
+            Class<?> packetPlayOutChat = require(ReflectionUtil.getNMSClass("PacketPlayOutChat"), "PacketPlayOutChat");
+            Class<?> packet = require(ReflectionUtil.getNMSClass("Packet"), "Packet");
+
+            getHandleMethod = require(ReflectionUtil.getMethod(craftPlayer, "getHandle"), "CraftPlayer.getHandle()");
+            playerConnectionField = require(ReflectionUtil.getField(entityPlayer, "playerConnection"),
+                                            "EntityPlayer.playerConnection");
+            serializeMethod = require(ReflectionUtil.getMethod(chatSerializer, "a", String.class),
+                                      "ChatSerializer.a(String)");
+            try {
+                chatPacketConstructor = packetPlayOutChat.getConstructor(chatComponent);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("Could not resolve PacketPlayOutChat(IChatBaseComponent) for version "
+                                                + ReflectionUtil.getVersion(), e);
+            }
+            sendPacketMethod = require(ReflectionUtil.getMethod(playerConnectionField.getType(), "sendPacket",
+                                                                packet), "PlayerConnection.sendPacket(Packet)");
+            localeField = ReflectionUtil.getField(entityPlayer, "locale");
+        }
+
+        private static Handles get() throws IllegalStateException {
+            if (FAILURE != null) {
+                throw new IllegalStateException("NMS chat classes are unavailable: " + FAILURE.getMessage(), FAILURE);
+            }
+            return INSTANCE;
+        }
+
+        private static <T> T require(T resolved, String description) {
+            if (resolved == null) {
+                throw new IllegalStateException("Could not resolve " + description + " for version "
+                                                + ReflectionUtil.getVersion());
+            }
+            return resolved;
+        }
+    }
+}
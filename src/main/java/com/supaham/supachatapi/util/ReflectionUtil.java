@@ -4,14 +4,47 @@ import org.bukkit.Bukkit;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Utility methods for accessing NMS and OBC through reflection.
+ * <p/>
+ * NMS and OBC classes, and the fields and methods of classes loaded by the server or the JDK, are resolved once and
+ * cached, including lookups that fail, so repeated lookups cost a hash lookup and never log the same failure twice.
+ * Fields and methods of classes loaded by plugins are looked up every time, so that the cache does not keep a plugin's
+ * classes loaded after it is disabled. All methods are thread-safe.
+ */
 public class ReflectionUtil {
 
+    /**
+     * System property that overrides the version of the NMS/OBC packages, e.g. {@code v1_7_R4}. This allows the API
+     * to run without a Bukkit server, such as in benchmarks.
+     */
+    public static final String VERSION_PROPERTY = "supachatapi.nms.version";
+
+    private static final Logger LOGGER = Logger.getLogger(ReflectionUtil.class.getName());
+    private static final ClassLoader SERVER_LOADER = Bukkit.class.getClassLoader();
+
     private static String VERSION = null;
 
+    /**
+     * Cached in place of lookups that failed, as the maps do not allow null values.
+     */
+    private static final Object NOT_FOUND = new Object();
+    private static final ConcurrentMap<String, Object> classes = new ConcurrentHashMap<String, Object>();
+    private static final ConcurrentMap<MemberKey, Object> members = new ConcurrentHashMap<MemberKey, Object>();
+
     static {
-        String name = Bukkit.getServer().getClass().getPackage().getName();
-        VERSION = name.substring(name.lastIndexOf('.') + 1) + ".";
+        String version = System.getProperty(VERSION_PROPERTY);
+        if (version == null) {
+            String name = Bukkit.getServer().getClass().getPackage().getName();
+            version = name.substring(name.lastIndexOf('.') + 1);
+        }
+        VERSION = version + ".";
     }
 
     public static String getVersion() {
@@ -19,56 +52,101 @@ public class ReflectionUtil {
     }
 
     public static Class<?> getNMSClass(String className) {
-        String fullName = "net.minecraft.server." + getVersion() + className;
-        Class<?> clazz = null;
-        try {
-            clazz = Class.forName(fullName);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return clazz;
+        return getClass("net.minecraft.server." + getVersion() + className);
     }
 
     public static Class<?> getOBCClass(String className) {
-        String fullName = "org.bukkit.craftbukkit." + getVersion() + className;
-        Class<?> clazz = null;
-        try {
-            clazz = Class.forName(fullName);
-        } catch (Exception e) {
-            e.printStackTrace();
+        return getClass("org.bukkit.craftbukkit." + getVersion() + className);
+    }
+
+    private static Class<?> getClass(String fullName) {
+        Object cached = classes.get(fullName);
+        if (cached == null) {
+            try {
+                cached = Class.forName(fullName);
+            } catch (ClassNotFoundException e) {
+                LOGGER.warning("Could not find class " + fullName);
+                cached = NOT_FOUND;
+            } catch (LinkageError e) {
+                LOGGER.log(Level.WARNING, "Could not load class " + fullName, e);
+                cached = NOT_FOUND;
+            }
+            classes.putIfAbsent(fullName, cached);
         }
-        return clazz;
+        return cached == NOT_FOUND ? null : (Class<?>) cached;
     }
 
     public static Object getHandle(Object obj) {
         try {
             return getMethod(obj.getClass(), "getHandle").invoke(obj);
         } catch (Exception e) {
-            e.printStackTrace();
+            LOGGER.log(Level.WARNING, "Could not get the handle of " + obj.getClass().getName(), e);
             return null;
         }
     }
 
+    /**
+     * Gets a field declared by a class, made accessible.
+     *
+     * @param clazz class that declares the field
+     * @param name  name of the field
+     * @return the field, or null if the class declares no such field
+     */
     public static Field getField(Class<?> clazz, String name) {
-        try {
-            Field field = clazz.getDeclaredField(name);
-            field.setAccessible(true);
-            return field;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        boolean cacheable = isCacheable(clazz);
+        MemberKey key = cacheable ? new MemberKey(clazz, name, null) : null;
+        Object cached = cacheable ? members.get(key) : null;
+        if (cached == null) {
+            try {
+                Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                cached = field;
+            } catch (Exception e) {
+                cached = NOT_FOUND;
+            }
+            if (cacheable) {
+                members.putIfAbsent(key, cached);
+            }
         }
+        return cached == NOT_FOUND ? null : (Field) cached;
     }
 
+    /**
+     * Gets a public method of a class, made accessible.
+     *
+     * @param clazz class to get the method of
+     * @param name  name of the method
+     * @param args  parameter types of the method, or none to get the first method with the given name
+     * @return the method, or null if the class has no such method
+     */
     public static Method getMethod(Class<?> clazz, String name,
                                    Class<?>... args) {
-        for (Method m : clazz.getMethods()) {
-            if (m.getName().equals(name) && (args.length == 0 || ClassListEqual(args, m.getParameterTypes()))) {
-                m.setAccessible(true);
-                return m;
+        boolean cacheable = isCacheable(clazz);
+        MemberKey key = cacheable ? new MemberKey(clazz, name, args) : null;
+        Object cached = cacheable ? members.get(key) : null;
+        if (cached == null) {
+            cached = NOT_FOUND;
+            for (Method m : clazz.getMethods()) {
+                if (m.getName().equals(name) && (args.length == 0 || ClassListEqual(args, m.getParameterTypes()))) {
+                    m.setAccessible(true);
+                    cached = m;
+                    break;
+                }
+            }
+            if (cacheable) {
+                members.putIfAbsent(key, cached);
             }
         }
-        return null;
+        return cached == NOT_FOUND ? null : (Method) cached;
+    }
+
+    /**
+     * Checks whether the members of a class may be cached, which is only the case if the class is loaded by the server
+     * or the JDK, and so lives as long as this cache.
+     */
+    private static boolean isCacheable(Class<?> clazz) {
+        ClassLoader loader = clazz.getClassLoader();
+        return loader == null || loader == SERVER_LOADER;
     }
 
     public static boolean ClassListEqual(Class<?>[] l1, Class<?>[] l2) {
@@ -85,4 +163,39 @@ public class ReflectionUtil {
         return equal;
     }
 
+    /**
+     * Identifies a field, or a method by its parameter types.
+     */
+    private static final class MemberKey {
+
+        private final Class<?> clazz;
+        private final String name;
+        private final Class<?>[] args;
+        private final int hash;
+
+        private MemberKey(Class<?> clazz, String name, Class<?>[] args) {
+            this.clazz = clazz;
+            this.name = name;
+            this.args = args == null ? null : args.clone();
+            this.hash = (clazz.hashCode() * 31 + name.hashCode()) * 31 + Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MemberKey)) {
+                return false;
+            }
+            MemberKey other = (MemberKey) o;
+            return hash == other.hash && clazz == other.clazz && name.equals(other.name)
+                   && Arrays.equals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.supaham.supachatapi.util;
+
+import org.apache.commons.lang.Validate;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads Strings and varints in the binary encoding written by {@link StringEncoder}. Every String is decoded once and
+ * shared by all references to it. A StringDecoder is not thread-safe.
+ */
+public final class StringDecoder {
+
+    private final DataInputStream in;
+    private final boolean sized;
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Constructs a new StringDecoder.
+     *
+     * @param in    stream to read from
+     * @param sized whether {@link DataInputStream#available()} is the amount of bytes left in {@code in}, so that
+     *              lengths past the end are rejected before allocating
+     */
+    public StringDecoder(DataInputStream in, boolean sized) {
+        Validate.notNull(in, "in cannot be null.");
+        this.in = in;
+        this.sized = sized;
+    }
+
+    /**
+     * Reads a String.
+     *
+     * @return the String, nullable
+     * @throws IOException thrown if the String could not be read or is malformed
+     */
+    public String readString() throws IOException {
+        int reference = readVarInt();
+        if (reference == StringEncoder.NULL_STRING) {
+            return null;
+        }
+        if (reference != StringEncoder.NEW_STRING) {
+            int index = reference - StringEncoder.FIRST_REFERENCE;
+            if (index >= strings.size()) {
+                throw new IOException("Malformed string reference " + reference + ".");
+            }
+            return strings.get(index);
+        }
+        int length = readVarInt();
+        if (length > StringEncoder.MAX_STRING_BYTES || (sized && length > in.available())) {
+            throw new IOException("Malformed string length " + length + ".");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        String s = new String(bytes, StringEncoder.UTF_8);
+        strings.add(s);
+        return s;
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @return the value
+     * @throws IOException thrown if the value could not be read or is malformed
+     */
+    public int readVarInt() throws IOException {
+        return readVarInt(in.readUnsignedByte());
+    }
+
+    /**
+     * Reads a varint whose first byte was already read.
+     *
+     * @param first first byte of the varint
+     * @return the value
+     * @throws IOException thrown if the value could not be read or is malformed
+     */
+    public int readVarInt(int first) throws IOException {
+        int value = first & 0x7F;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 28) {
+                throw new IOException("Malformed varint.");
+            }
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+        }
+        if (value < 0) {
+            throw new IOException("Malformed varint.");
+        }
+        return value;
+    }
+
+    /**
+     * Gets the amount of distinct Strings read so far.
+     *
+     * @return amount of Strings
+     */
+    public int getStringCount() {
+        return strings.size();
+    }
+}
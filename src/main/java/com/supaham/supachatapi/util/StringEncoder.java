@@ -0,0 +1,93 @@
+package com.supaham.supachatapi.util;
+
+import org.apache.commons.lang.Validate;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes Strings and varints in the compact binary encoding read by {@link StringDecoder}, which is shared by the
+ * message streams and template bundles of this API.
+ * <p/>
+ * Every String is written in full only the first time this encoder writes it, later occurrences refer back to it by
+ * index. Lengths, indexes and other varints are written in 7-bit groups, least significant first, so small values take
+ * a single byte. A StringEncoder is not thread-safe.
+ */
+public final class StringEncoder {
+
+    /**
+     * The maximum length of a String in UTF-8 bytes, far above what a chat packet can hold. Decoders reject longer
+     * Strings, so that malformed input can not make them allocate huge arrays.
+     */
+    public static final int MAX_STRING_BYTES = 1 << 20;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    // String references, any larger value is the index of a previous String plus FIRST_REFERENCE.
+    static final int NEW_STRING = 0, NULL_STRING = 1, FIRST_REFERENCE = 2;
+
+    private final DataOutput out;
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    /**
+     * Constructs a new StringEncoder.
+     *
+     * @param out output to write to
+     */
+    public StringEncoder(DataOutput out) {
+        Validate.notNull(out, "out cannot be null.");
+        this.out = out;
+    }
+
+    /**
+     * Writes a String, or a reference to it if this encoder wrote it before.
+     *
+     * @param s String to write, nullable
+     * @throws IOException thrown if the String is longer than {@link #MAX_STRING_BYTES}, or could not be written
+     */
+    public void writeString(String s) throws IOException {
+        if (s == null) {
+            writeVarInt(NULL_STRING);
+            return;
+        }
+        Integer index = strings.get(s);
+        if (index != null) {
+            writeVarInt(index + FIRST_REFERENCE);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IOException("String of " + bytes.length + " bytes exceeds the limit of " + MAX_STRING_BYTES
+                                  + " bytes.");
+        }
+        strings.put(s, strings.size());
+        writeVarInt(NEW_STRING);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a varint.
+     *
+     * @param value value to write, must not be negative
+     * @throws IOException thrown if the value could not be written
+     */
+    public void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Gets the amount of distinct Strings written so far.
+     *
+     * @return amount of Strings
+     */
+    public int getStringCount() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,123 @@
+package com.supaham.supachatapi.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Represents a set of counters that many threads can add to without contending on a single memory location.
+ * <p/>
+ * Every thread adds to the stripe its id hashes to, and reading a counter sums its stripes. Stripes are padded to
+ * their own cache lines. Sums are not atomic snapshots, but every completed add is counted.
+ */
+public final class StripedCounter {
+
+    private static final int STRIPES;
+    private static final int PAD = 16; // 128 bytes of longs between stripes.
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < 64) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final int counters;
+    private final int stride;
+    private final AtomicLongArray cells;
+
+    /**
+     * Constructs a new StripedCounter with a single counter.
+     */
+    public StripedCounter() {
+        this(1);
+    }
+
+    /**
+     * Constructs a new StripedCounter.
+     *
+     * @param counters amount of counters, must be larger than 0
+     */
+    public StripedCounter(int counters) {
+        if (counters <= 0) {
+            throw new IllegalArgumentException("counters must be larger than 0.");
+        }
+        this.counters = counters;
+        this.stride = counters + PAD;
+        this.cells = new AtomicLongArray(STRIPES * stride);
+    }
+
+    /**
+     * Adds to the first counter.
+     *
+     * @param delta amount to add
+     */
+    public void add(long delta) {
+        add(0, delta);
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter index of the counter
+     * @param delta   amount to add
+     */
+    public void add(int counter, long delta) {
+        cells.getAndAdd(stripe() + counter, delta);
+    }
+
+    /**
+     * Adds one to a counter.
+     *
+     * @param counter index of the counter
+     */
+    public void increment(int counter) {
+        cells.getAndIncrement(stripe() + counter);
+    }
+
+    /**
+     * Gets the sum of the first counter.
+     *
+     * @return the sum
+     */
+    public long sum() {
+        return sum(0);
+    }
+
+    /**
+     * Gets the sum of a counter.
+     *
+     * @param counter index of the counter
+     * @return the sum
+     */
+    public long sum(int counter) {
+        long sum = 0;
+        for (int i = counter; i < cells.length(); i += stride) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the amount of counters.
+     *
+     * @return amount of counters
+     */
+    public int getCounters() {
+        return counters;
+    }
+
+    /**
+     * Sets all counters to 0. Adds that happen at the same time may or may not be kept.
+     */
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * stride;
+    }
+}
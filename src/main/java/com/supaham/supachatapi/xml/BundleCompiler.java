@@ -0,0 +1,208 @@
+package com.supaham.supachatapi.xml;
+
+import com.supaham.supachatapi.util.StringEncoder;
+import org.apache.commons.lang.Validate;
+
+import javax.xml.bind.JAXBException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Compiles XML sources into a {@link TemplateBundle}. Every source is compiled with {@link XmlParser}, so an invalid
+ * source fails the build instead of the first message that uses it.
+ * <p/>
+ * Sources are usually read from a directory of {@code <locale>.properties} files, each mapping keys to the XML source
+ * of their template in that locale. Properties files are read as UTF-8. This class can also be run from the command
+ * line:
+ * <pre>
+ * java com.supaham.supachatapi.xml.BundleCompiler &lt;output file&gt; &lt;directory&gt;...
+ * </pre>
+ */
+public final class BundleCompiler {
+
+    private static final String EXTENSION = ".properties";
+
+    private final XmlParser parser = new XmlParser(1);
+    private final SortedMap<String, Map<String, XmlTemplate>> templates =
+            new TreeMap<String, Map<String, XmlTemplate>>();
+    private final List<String> locales = new ArrayList<String>();
+    private int size;
+
+    /**
+     * Compiles the sources of the given directories into a bundle file.
+     *
+     * @param args the output file, followed by one or more directories of {@code <locale>.properties} files
+     * @throws IOException thrown if a file could not be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BundleCompiler <output file> <directory>...");
+            System.exit(1);
+        }
+        BundleCompiler compiler = new BundleCompiler();
+        for (int i = 1; i < args.length; i++) {
+            compiler.addDirectory(new File(args[i]));
+        }
+        compiler.write(new File(args[0]));
+        System.out.println("Compiled " + compiler.size() + " templates in " + compiler.locales.size() + " locales into "
+                           + args[0]);
+    }
+
+    /**
+     * Compiles the source of a key in a locale, replacing any previous template of the key in the locale.
+     *
+     * @param key    key of the template
+     * @param locale locale of the template
+     * @param source XML source of the template
+     * @throws IllegalArgumentException thrown if the {@code source} is not valid
+     */
+    public void add(String key, String locale, String source) throws IllegalArgumentException {
+        Validate.notNull(key, "key cannot be null.");
+        Validate.notNull(locale, "locale cannot be null.");
+        Validate.notNull(source, "source cannot be null.");
+        XmlTemplate template;
+        try {
+            template = parser.compile(source);
+        } catch (JAXBException e) {
+            throw new IllegalArgumentException("Could not compile " + key + " in " + locale, e);
+        }
+        Map<String, XmlTemplate> byLocale = templates.get(key);
+        if (byLocale == null) {
+            templates.put(key, byLocale = new HashMap<String, XmlTemplate>());
+        }
+        if (byLocale.put(locale, template) == null) {
+            size++;
+        }
+        if (!locales.contains(locale)) {
+            locales.add(locale);
+        }
+    }
+
+    /**
+     * Compiles every source of a properties file.
+     *
+     * @param locale locale of the sources
+     * @param reader reader of the properties file, it is not closed
+     * @throws IOException              thrown if the file could not be read
+     * @throws IllegalArgumentException thrown if a source is not valid
+     */
+    public void addProperties(String locale, Reader reader) throws IOException, IllegalArgumentException {
+        Validate.notNull(reader, "reader cannot be null.");
+        Properties properties = new Properties();
+        properties.load(reader);
+        for (String key : properties.stringPropertyNames()) {
+            add(key, locale, properties.getProperty(key));
+        }
+    }
+
+    /**
+     * Compiles every source of the {@code <locale>.properties} files in a directory.
+     *
+     * @param directory directory to read
+     * @throws IOException              thrown if a file could not be read
+     * @throws IllegalArgumentException thrown if a source is not valid
+     */
+    public void addDirectory(File directory) throws IOException, IllegalArgumentException {
+        Validate.notNull(directory, "directory cannot be null.");
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException(directory + " is not a directory.");
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!file.isFile() || !name.endsWith(EXTENSION)) {
+                continue;
+            }
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                addProperties(name.substring(0, name.length() - EXTENSION.length()), reader);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of compiled templates.
+     *
+     * @return amount of templates
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the bundle of all compiled templates.
+     *
+     * @param out stream to write to, it is not closed
+     * @throws IOException thrown if the bundle could not be written
+     */
+    public void write(OutputStream out) throws IOException {
+        Validate.notNull(out, "out cannot be null.");
+        ByteArrayOutputStream headBytes = new ByteArrayOutputStream();
+        DataOutputStream head = new DataOutputStream(headBytes);
+        head.writeInt(TemplateBundle.MAGIC | TemplateBundle.FORMAT_VERSION);
+        StringEncoder strings = new StringEncoder(head);
+        strings.writeVarInt(locales.size());
+        for (String locale : locales) {
+            strings.writeString(locale);
+        }
+        strings.writeVarInt(templates.size());
+        for (String key : templates.keySet()) {
+            strings.writeString(key);
+        }
+
+        // Templates follow the header and the offset table, in key and then locale order.
+        int first = head.size() + templates.size() * locales.size() * 4;
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        for (Map<String, XmlTemplate> byLocale : templates.values()) {
+            for (String locale : locales) {
+                XmlTemplate template = byLocale.get(locale);
+                if (template == null) {
+                    head.writeInt(-1);
+                } else {
+                    head.writeInt(first + body.size());
+                    template.write(body);
+                }
+            }
+        }
+        if ((long) first + body.size() > Integer.MAX_VALUE) {
+            throw new IOException("Template bundle is larger than 2GB.");
+        }
+        headBytes.writeTo(out);
+        bodyBytes.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Writes the bundle of all compiled templates to a file.
+     *
+     * @param file file to write to
+     * @throws IOException thrown if the bundle could not be written
+     */
+    public void write(File file) throws IOException {
+        Validate.notNull(file, "file cannot be null.");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.supaham.supachatapi.xml;
 
-import com.supaham.supachatapi.fanciful.FancyMessage;
 import com.supaham.supachatapi.xml.tags.A;
 import com.supaham.supachatapi.xml.tags.B;
 import com.supaham.supachatapi.xml.tags.Color;
@@ -16,8 +15,6 @@ import javax.xml.bind.annotation.XmlMixed;
 import javax.xml.bind.annotation.XmlSeeAlso;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @XmlSeeAlso({A.class,
              B.class,
@@ -39,50 +36,41 @@ public class Element {
     public List<Object> mixedContent = new ArrayList<Object>();
 
     /**
-     * This regex pattern validates the syntax for onClick/onHover chat events. <p/>
-     * Click <a href="http://www.regexr.com/38pjh">here</a> for fun.
+     * Compiles the onClick/onHover attributes of this element into a {@link TemplateStyle}. Subclasses add their own
+     * style after calling this method.
+     *
+     * @param style style to compile into
      */
-    private static final Pattern FUNCTION_PATTERN = Pattern.compile("^([^(]+)\\('(.*)'\\)$");
-
-    protected void modifyStyle(FancyMessage fancyMessage, Object... params) {
-
+    protected void compileStyle(TemplateStyle style) {
         if (onClick != null) {
-            Matcher matcher = FUNCTION_PATTERN.matcher(onClick);
-            if (!matcher.matches()) {
-                throw new IllegalArgumentException("onClick syntax is invalid ('" + onClick + "')");
-            }
-            String event = matcher.group(1);
-            String data = String.format(matcher.group(2), params);
-            fancyMessage.onClick(event, data);
+            style.onClick(onClick);
         }
-
         if (onHover != null) {
-            Matcher matcher = FUNCTION_PATTERN.matcher(onHover);
-            if (!matcher.matches()) {
-                throw new IllegalArgumentException("onHover syntax is invalid ('" + onHover + "')");
-            }
-            String event = matcher.group(1);
-            String data = String.format(matcher.group(2), params);
-            fancyMessage.onHover(event, data);
+            style.onHover(onHover);
         }
     }
 
-    public FancyMessage getFancyMessage() {
-        FancyMessage fancyMessage = new FancyMessage();
-        modifyStyle(fancyMessage);
-        loop(fancyMessage);
-        return fancyMessage;
+    /**
+     * Compiles this element and its content into an {@link XmlTemplate}.
+     *
+     * @param source source this element was unmarshalled from
+     * @return the compiled template
+     */
+    public XmlTemplate compile(String source) {
+        XmlTemplate.Builder builder = new XmlTemplate.Builder();
+        compileStyle(builder.style());
+        compileContent(builder);
+        return builder.build(source);
     }
 
-    protected void loop(FancyMessage fancyMessage) {
+    private void compileContent(XmlTemplate.Builder builder) {
         for (Object o : mixedContent) {
-            if (fancyMessage.hasText()) fancyMessage.then();
             if (o instanceof String) {
-                fancyMessage.text(o.toString());
+                builder.text(o.toString());
             } else if (o instanceof Element) {
                 Element element = (Element) o;
-                element.modifyStyle(fancyMessage);
-                element.loop(fancyMessage);
+                element.compileStyle(builder.style());
+                element.compileContent(builder);
             }
         }
     }
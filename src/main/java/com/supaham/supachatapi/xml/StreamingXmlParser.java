@@ -0,0 +1,512 @@
+package com.supaham.supachatapi.xml;
+
+import com.supaham.supachatapi.BatchParser;
+import com.supaham.supachatapi.Parser;
+import com.supaham.supachatapi.fanciful.BroadcastResult;
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.util.ChatMetrics;
+import com.supaham.supachatapi.util.LruCache;
+import org.apache.commons.lang.Validate;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a single-pass XML implementation of {@link Parser} that does not depend on JAXB.
+ * <p/>
+ * This parser understands the same markup as {@link XmlParser} and produces the same JSON for it, but scans the
+ * source once and compiles the {@link XmlTemplate} directly instead of unmarshalling an {@link Element} tree. Compiled
+ * templates are kept in a bounded cache, like {@link XmlParser} does.
+ */
+public class StreamingXmlParser implements BatchParser {
+
+    private final LruCache<String, XmlTemplate> cache;
+
+    public StreamingXmlParser() {
+        this(XmlParser.DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a new StreamingXmlParser.
+     *
+     * @param cacheSize maximum amount of compiled templates to keep cached
+     */
+    public StreamingXmlParser(int cacheSize) {
+        this.cache = new LruCache<String, XmlTemplate>(cacheSize);
+    }
+
+    @Override
+    public FancyMessage parse(String source, Object... params) throws ParseException {
+        ChatMetrics metrics = ChatMetrics.getGlobal();
+        long start = metrics.start();
+        boolean parsed = false;
+        try {
+            FancyMessage fancyMessage = compile(source).render(params);
+            parsed = true;
+            return fancyMessage;
+        } finally {
+            metrics.stop(ChatMetrics.Operation.PARSE, start, !parsed);
+        }
+    }
+
+    @Override
+    public Map<Player, List<Object>> renderBatch(String source, Iterable<? extends Player> recipients,
+                                                 RecipientParams params) throws ParseException {
+        return compile(source).renderBatch(recipients, params);
+    }
+
+    @Override
+    public BroadcastResult sendBatch(String source, Iterable<? extends Player> recipients, RecipientParams params)
+            throws ParseException {
+        return compile(source).sendBatch(recipients, params);
+    }
+
+    /**
+     * Compiles a source into an {@link XmlTemplate}, reusing a cached template if this source was compiled before.
+     *
+     * @param source source to compile
+     * @return the compiled template
+     * @throws ParseException thrown if the {@code source} is not valid
+     */
+    public XmlTemplate compile(String source) throws ParseException {
+        Validate.notNull(source, "source cannot be null.");
+        XmlTemplate template = cache.get(source);
+        ChatMetrics.getGlobal().recordCache(ChatMetrics.Cache.TEMPLATE, template != null);
+        if (template == null) {
+            template = new Scanner(source).scan();
+            cache.put(source, template);
+        }
+        return template;
+    }
+
+    /**
+     * Removes all compiled templates from this parser's cache.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Holds the state of a single {@link #compile(String)} call.
+     */
+    private static final class Scanner {
+
+        private static final int UNKNOWN = -1, A = 0, B = 1, COLOR = 2, I = 3, OBFUSCATED = 4, S = 5, SPAN = 6, U = 7;
+        private static final String[] TAGS = {"a", "b", "color", "i", "obfuscated", "s", "span", "u"};
+
+        private final String source;
+        private final int length;
+        private final XmlTemplate.Builder builder = new XmlTemplate.Builder();
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder attributeValue = new StringBuilder();
+
+        private String[] stack = new String[8];
+        private int depth = 0;
+        private int skipDepth = -1; // depth of the unknown element whose content is being skipped
+        private String[] prefixes = new String[4]; // namespace prefixes declared by the open elements
+        private int[] prefixDepths = new int[4];
+        private int prefixCount = 0;
+        private int pos = 0;
+
+        // Attributes of the current start tag.
+        private String onClick, onHover, href, id;
+
+        private Scanner(String source) {
+            this.source = source;
+            this.length = source.length();
+        }
+
+        private XmlTemplate scan() throws ParseException {
+            while (pos < length) {
+                char c = source.charAt(pos);
+                if (c == '<') {
+                    markup();
+                } else if (c == '&') {
+                    reference(text);
+                } else if (c == '\r') {
+                    text.append('\n');
+                    if (++pos < length && source.charAt(pos) == '\n') {
+                        pos++;
+                    }
+                } else {
+                    if (c == ']' && source.startsWith("]]>", pos)) {
+                        throw error("\"]]>\" must not appear in content unless used to end a CDATA section");
+                    }
+                    text.append(c);
+                    pos++;
+                }
+            }
+            if (depth > 0) {
+                throw error("element \"" + stack[depth - 1] + "\" must be terminated by the matching end-tag");
+            }
+            flushText(false);
+            return builder.build(source);
+        }
+
+        private void markup() throws ParseException {
+            if (source.startsWith("<!--", pos)) {
+                pos = indexAfter("-->", pos + 4, "comment");
+            } else if (source.startsWith("<![CDATA[", pos)) {
+                int start = pos + 9;
+                pos = indexAfter("]]>", start, "CDATA section");
+                for (int i = start; i < pos - 3; i++) {
+                    char c = source.charAt(i);
+                    if (c == '\r') {
+                        text.append('\n');
+                        if (i + 1 < pos - 3 && source.charAt(i + 1) == '\n') {
+                            i++;
+                        }
+                    } else {
+                        text.append(c);
+                    }
+                }
+            } else if (source.startsWith("<!", pos)) {
+                throw error("DOCTYPE and other declarations are not allowed");
+            } else if (source.startsWith("<?", pos)) {
+                pos += 2;
+                String target = readName();
+                if (target.equalsIgnoreCase("xml")) {
+                    throw error("processing instruction target \"" + target + "\" is not allowed");
+                }
+                pos = indexAfter("?>", pos, "processing instruction");
+            } else if (source.startsWith("</", pos)) {
+                endTag();
+            } else {
+                startTag();
+            }
+        }
+
+        private void startTag() throws ParseException {
+            pos++;
+            String name = readName();
+            onClick = onHover = href = id = null;
+            boolean unknown = name.indexOf(':') >= 0;
+            String[] seen = null;
+            int seenCount = 0;
+            while (true) {
+                boolean whitespace = skipWhitespace();
+                if (pos >= length) {
+                    throw error("element \"" + name + "\" is not terminated");
+                }
+                char c = source.charAt(pos);
+                if (c == '>' || c == '/') {
+                    break;
+                }
+                if (!whitespace) {
+                    throw error("element \"" + name + "\" must be followed by attributes, \">\" or \"/>\"");
+                }
+                String attribute = readName();
+                for (int i = 0; i < seenCount; i++) {
+                    if (seen[i].equals(attribute)) {
+                        throw error("attribute \"" + attribute + "\" was already specified for \"" + name + "\"");
+                    }
+                }
+                if (seen == null) {
+                    seen = new String[4];
+                } else if (seenCount == seen.length) {
+                    String[] grown = new String[seenCount * 2];
+                    System.arraycopy(seen, 0, grown, 0, seenCount);
+                    seen = grown;
+                }
+                seen[seenCount++] = attribute;
+
+                skipWhitespace();
+                expect('=');
+                skipWhitespace();
+                String value = readAttributeValue();
+                if (attribute.equals("onClick")) {
+                    onClick = value;
+                } else if (attribute.equals("onHover")) {
+                    onHover = value;
+                } else if (attribute.equals("href")) {
+                    href = value;
+                } else if (attribute.equals("id")) {
+                    id = value;
+                } else if (attribute.equals("xmlns") && !value.isEmpty()) {
+                    unknown = true; // Element in another namespace.
+                } else if (attribute.startsWith("xmlns:")) {
+                    declarePrefix(attribute.substring(6));
+                }
+            }
+            // Like JAXB, prefixes of the element and its attributes must be declared by it or an enclosing element.
+            checkPrefix(name, "element");
+            for (int i = 0; i < seenCount; i++) {
+                if (!seen[i].startsWith("xmlns:")) {
+                    checkPrefix(seen[i], "attribute");
+                }
+            }
+            boolean empty = source.charAt(pos) == '/';
+            if (empty) {
+                pos++;
+            }
+            expect('>');
+
+            flushText(depth == 0);
+            push(name);
+            if (skipDepth < 0) {
+                int tag = unknown ? UNKNOWN : tag(name);
+                if (tag == UNKNOWN) {
+                    skipDepth = depth;
+                } else {
+                    compileStyle(tag, builder.style());
+                }
+            }
+            if (empty) {
+                pop();
+            }
+        }
+
+        private void endTag() throws ParseException {
+            pos += 2;
+            String name = readName();
+            skipWhitespace();
+            expect('>');
+            if (depth == 0 || !stack[depth - 1].equals(name)) {
+                throw error("end-tag \"" + name + "\" does not match "
+                            + (depth == 0 ? "any element" : "element \"" + stack[depth - 1] + "\""));
+            }
+            flushText(false);
+            pop();
+        }
+
+        private void push(String name) {
+            if (depth == stack.length) {
+                String[] grown = new String[depth * 2];
+                System.arraycopy(stack, 0, grown, 0, depth);
+                stack = grown;
+            }
+            stack[depth++] = name;
+        }
+
+        private void pop() {
+            if (skipDepth == depth) {
+                skipDepth = -1;
+            }
+            stack[--depth] = null;
+            while (prefixCount > 0 && prefixDepths[prefixCount - 1] >= depth) {
+                prefixes[--prefixCount] = null;
+            }
+        }
+
+        private void declarePrefix(String prefix) {
+            if (prefixCount == prefixes.length) {
+                String[] grown = new String[prefixCount * 2];
+                System.arraycopy(prefixes, 0, grown, 0, prefixCount);
+                prefixes = grown;
+                int[] grownDepths = new int[prefixCount * 2];
+                System.arraycopy(prefixDepths, 0, grownDepths, 0, prefixCount);
+                prefixDepths = grownDepths;
+            }
+            prefixes[prefixCount] = prefix;
+            prefixDepths[prefixCount++] = depth; // The element is pushed at this depth.
+        }
+
+        private void checkPrefix(String name, String kind) throws ParseException {
+            int colon = name.indexOf(':');
+            if (colon < 0) {
+                return;
+            }
+            String prefix = name.substring(0, colon);
+            if (prefix.equals("xml")) {
+                return;
+            }
+            for (int i = 0; i < prefixCount; i++) {
+                if (prefixes[i].equals(prefix)) {
+                    return;
+                }
+            }
+            throw error("the prefix \"" + prefix + "\" for " + kind + " \"" + name + "\" is not bound");
+        }
+
+        /**
+         * Appends the pending text as its own part. Like JAXB, whitespace-only text followed by a start-tag is ignored
+         * when it is not nested in any element.
+         */
+        private void flushText(boolean ignorable) {
+            if (text.length() == 0) {
+                return;
+            }
+            if (skipDepth < 0 && !(ignorable && isWhitespace(text))) {
+                builder.text(text.toString());
+            }
+            text.setLength(0);
+        }
+
+        private void compileStyle(int tag, TemplateStyle style) {
+            if (tag == COLOR) {
+                if (id == null || id.isEmpty()) {
+                    throw new IllegalArgumentException("id can not be empty.");
+                }
+            }
+            if (onClick != null) {
+                style.onClick(onClick);
+            }
+            if (onHover != null) {
+                style.onHover(onHover);
+            }
+            switch (tag) {
+                case A:
+                    style.link(href);
+                    break;
+                case B:
+                    style.style(ChatColor.BOLD);
+                    break;
+                case COLOR:
+                    ChatColor color =
+                            id.length() == 1 ? ChatColor.getByChar(id.toLowerCase()) : ChatColor.valueOf(id.toUpperCase());
+                    Validate.notNull(color, id + " is not a valid color");
+                    Validate.isTrue(!color.isFormat(), id + " is not a color, its a style.");
+                    style.color(color);
+                    break;
+                case I:
+                    style.style(ChatColor.ITALIC);
+                    break;
+                case OBFUSCATED:
+                    style.style(ChatColor.MAGIC);
+                    break;
+                case S:
+                    style.style(ChatColor.STRIKETHROUGH);
+                    break;
+                case U:
+                    style.style(ChatColor.UNDERLINE);
+                    break;
+            }
+        }
+
+        private String readAttributeValue() throws ParseException {
+            if (pos >= length) {
+                throw error("attribute value must be quoted");
+            }
+            char quote = source.charAt(pos);
+            if (quote != '"' && quote != '\'') {
+                throw error("attribute value must be quoted");
+            }
+            pos++;
+            attributeValue.setLength(0);
+            while (true) {
+                if (pos >= length) {
+                    throw error("attribute value is not terminated");
+                }
+                char c = source.charAt(pos);
+                if (c == quote) {
+                    pos++;
+                    return attributeValue.toString();
+                } else if (c == '<') {
+                    throw error("attribute value must not contain \"<\"");
+                } else if (c == '&') {
+                    reference(attributeValue);
+                } else if (c == '\r') {
+                    attributeValue.append(' ');
+                    if (++pos < length && source.charAt(pos) == '\n') {
+                        pos++;
+                    }
+                } else {
+                    attributeValue.append(c == '\n' || c == '\t' ? ' ' : c);
+                    pos++;
+                }
+            }
+        }
+
+        private void reference(StringBuilder out) throws ParseException {
+            int end = source.indexOf(';', pos + 1);
+            if (end < 0) {
+                throw error("entity reference must end with \";\"");
+            }
+            String entity = source.substring(pos + 1, end);
+            if (entity.startsWith("#")) {
+                int codePoint;
+                try {
+                    codePoint = entity.startsWith("#x") ? Integer.parseInt(entity.substring(2), 16)
+                                                        : Integer.parseInt(entity.substring(1));
+                } catch (NumberFormatException e) {
+                    throw error("invalid character reference \"&" + entity + ";\"");
+                }
+                if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT) {
+                    throw error("invalid character reference \"&" + entity + ";\"");
+                }
+                out.appendCodePoint(codePoint);
+            } else if (entity.equals("amp")) {
+                out.append('&');
+            } else if (entity.equals("lt")) {
+                out.append('<');
+            } else if (entity.equals("gt")) {
+                out.append('>');
+            } else if (entity.equals("quot")) {
+                out.append('"');
+            } else if (entity.equals("apos")) {
+                out.append('\'');
+            } else {
+                throw error("entity \"" + entity + "\" was referenced, but not declared");
+            }
+            pos = end + 1;
+        }
+
+        private String readName() throws ParseException {
+            int start = pos;
+            while (pos < length) {
+                char c = source.charAt(pos);
+                if (!(Character.isLetter(c) || c == '_' || c == ':'
+                      || (pos > start && (Character.isDigit(c) || c == '-' || c == '.')))) {
+                    break;
+                }
+                pos++;
+            }
+            if (pos == start) {
+                throw error("content must consist of well-formed character data or markup");
+            }
+            return source.substring(start, pos);
+        }
+
+        private boolean skipWhitespace() {
+            int start = pos;
+            while (pos < length && isWhitespace(source.charAt(pos))) {
+                pos++;
+            }
+            return pos > start;
+        }
+
+        private void expect(char c) throws ParseException {
+            if (pos >= length || source.charAt(pos) != c) {
+                throw error("expected \"" + c + "\"");
+            }
+            pos++;
+        }
+
+        private int indexAfter(String terminator, int from, String construct) throws ParseException {
+            int index = source.indexOf(terminator, from);
+            if (index < 0) {
+                throw error(construct + " is not terminated");
+            }
+            return index + terminator.length();
+        }
+
+        private ParseException error(String message) {
+            return new ParseException(message + " (at index " + pos + ")", pos);
+        }
+
+        private static int tag(String name) {
+            for (int i = 0; i < TAGS.length; i++) {
+                if (TAGS[i].equals(name)) {
+                    return i;
+                }
+            }
+            return UNKNOWN;
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        private static boolean isWhitespace(CharSequence s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (!isWhitespace(s.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.supaham.supachatapi.xml;
+
+import com.supaham.supachatapi.util.ByteBufferInputStream;
+import com.supaham.supachatapi.util.ChatMetrics;
+import com.supaham.supachatapi.util.LruCache;
+import com.supaham.supachatapi.util.StringDecoder;
+import org.apache.commons.lang.Validate;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a file of compiled {@link XmlTemplate}s, indexed by key and locale, as written by
+ * {@link BundleCompiler}.
+ * <p/>
+ * Only the keys and locales are read when a bundle is opened. A template is decoded from the file on first access,
+ * which compiles its formats again but parses no XML, and is then kept in a bounded cache. Bundles opened with
+ * {@link #open(File)} are memory-mapped, so templates that are never used are never read. All methods are
+ * thread-safe.
+ */
+public final class TemplateBundle {
+
+    /**
+     * The default amount of decoded templates to keep cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * The first bytes of every bundle, {@code "SCB"} followed by {@link #FORMAT_VERSION}.
+     */
+    static final int MAGIC = 0x53434200;
+    /**
+     * The version of the bundle format.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    private final ByteBuffer buffer;
+    private final String[] keys; // Sorted.
+    private final String[] locales;
+    private final int offsets; // Position of the offset of every key and locale, -1 if there is no template.
+    private final LruCache<Integer, XmlTemplate> cache;
+
+    /**
+     * Constructs a new TemplateBundle over the remaining bytes of a {@link ByteBuffer}. The buffer must not be changed
+     * afterwards.
+     *
+     * @param buffer    buffer to read from
+     * @param cacheSize maximum amount of decoded templates to keep cached
+     * @throws IOException thrown if the bundle is malformed or its version is not supported
+     */
+    public TemplateBundle(ByteBuffer buffer, int cacheSize) throws IOException {
+        Validate.notNull(buffer, "buffer cannot be null.");
+        this.buffer = buffer.slice();
+        this.cache = new LruCache<Integer, XmlTemplate>(cacheSize);
+        ByteBuffer head = this.buffer.duplicate();
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(head));
+        try {
+            int magic = in.readInt();
+            if ((magic & ~0xFF) != MAGIC) {
+                throw new IOException("Not a template bundle.");
+            }
+            if ((magic & 0xFF) != FORMAT_VERSION) {
+                throw new IOException("Unsupported template bundle version " + (magic & 0xFF) + ".");
+            }
+            StringDecoder strings = new StringDecoder(in, true);
+            this.locales = readStrings(in, strings);
+            this.keys = readStrings(in, strings);
+            for (int i = 1; i < keys.length; i++) {
+                if (keys[i - 1].compareTo(keys[i]) >= 0) {
+                    throw new IOException("Template bundle keys are not sorted.");
+                }
+            }
+            this.offsets = head.position();
+            if ((long) keys.length * locales.length * 4 > head.remaining()) {
+                throw new IOException("Truncated template bundle.");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated template bundle.", e);
+        }
+    }
+
+    /**
+     * Opens a TemplateBundle by memory-mapping a file, with a cache of {@link #DEFAULT_CACHE_SIZE} templates.
+     *
+     * @param file file to open
+     * @return a new TemplateBundle
+     * @throws IOException thrown if the file could not be mapped, or is not a supported bundle
+     */
+    public static TemplateBundle open(File file) throws IOException {
+        return open(file, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens a TemplateBundle by memory-mapping a file.
+     *
+     * @param file      file to open
+     * @param cacheSize maximum amount of decoded templates to keep cached
+     * @return a new TemplateBundle
+     * @throws IOException thrown if the file could not be mapped, or is not a supported bundle
+     */
+    public static TemplateBundle open(File file, int cacheSize) throws IOException {
+        Validate.notNull(file, "file cannot be null.");
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            // The mapping stays valid after the channel is closed.
+            return new TemplateBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), cacheSize);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Gets the template of a key in a locale, decoding it if it is not cached.
+     *
+     * @param key    key of the template
+     * @param locale locale of the template
+     * @return the template, or null if this bundle has no template of the key in the locale
+     * @throws IllegalStateException thrown if the template is malformed
+     */
+    public XmlTemplate getTemplate(String key, String locale) throws IllegalStateException {
+        int index = index(key, locale);
+        if (index < 0) {
+            return null;
+        }
+        XmlTemplate template = cache.get(index);
+        ChatMetrics.getGlobal().recordCache(ChatMetrics.Cache.TEMPLATE, template != null);
+        if (template == null) {
+            int offset = buffer.getInt(offsets + index * 4);
+            if (offset < 0) {
+                return null;
+            }
+            ByteBuffer in = buffer.duplicate();
+            try {
+                in.position(offset);
+                template = XmlTemplate.read(in);
+            } catch (IllegalArgumentException e) { // Thrown by an offset past the end.
+                throw new IllegalStateException("Could not read template " + key + " in " + locale, e);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read template " + key + " in " + locale, e);
+            }
+            // Racing threads may decode the template twice, only one of which is kept.
+            cache.put(index, template);
+        }
+        return template;
+    }
+
+    /**
+     * Checks whether this bundle has a template of a key in a locale.
+     *
+     * @param key    key of the template
+     * @param locale locale of the template
+     * @return whether the template exists
+     */
+    public boolean contains(String key, String locale) {
+        int index = index(key, locale);
+        return index >= 0 && buffer.getInt(offsets + index * 4) >= 0;
+    }
+
+    /**
+     * Gets the keys of this bundle, in ascending order.
+     *
+     * @return unmodifiable list of keys
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /**
+     * Gets the locales of this bundle.
+     *
+     * @return unmodifiable list of locales
+     */
+    public List<String> getLocales() {
+        return Collections.unmodifiableList(Arrays.asList(locales));
+    }
+
+    /**
+     * Gets the amount of decoded templates in the cache.
+     *
+     * @return amount of cached templates
+     */
+    public int getCachedCount() {
+        return cache.size();
+    }
+
+    /**
+     * Removes all decoded templates from the cache.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private int index(String key, String locale) {
+        Validate.notNull(key, "key cannot be null.");
+        Validate.notNull(locale, "locale cannot be null.");
+        int keyIndex = Arrays.binarySearch(keys, key);
+        if (keyIndex < 0) {
+            return -1;
+        }
+        for (int i = 0; i < locales.length; i++) {
+            if (locales[i].equals(locale)) {
+                return keyIndex * locales.length + i;
+            }
+        }
+        return -1;
+    }
+
+    private static String[] readStrings(DataInputStream in, StringDecoder decoder) throws IOException {
+        int size = decoder.readVarInt();
+        if (size > in.available()) { // Every String takes at least one byte.
+            throw new IOException("Malformed string count " + size + ".");
+        }
+        String[] strings = new String[size];
+        for (int i = 0; i < size; i++) {
+            strings[i] = decoder.readString();
+            if (strings[i] == null) {
+                throw new IOException("Malformed string.");
+            }
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,187 @@
+package com.supaham.supachatapi.xml;
+
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.util.CompiledFormat;
+import com.supaham.supachatapi.util.StringDecoder;
+import com.supaham.supachatapi.util.StringEncoder;
+import org.apache.commons.lang.Validate;
+import org.bukkit.ChatColor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Represents the compiled style of an element in an {@link XmlTemplate}. The style is applied to the first part of
+ * the element's content every time the template is rendered.
+ *
+ * @see Element#compileStyle(TemplateStyle)
+ */
+public final class TemplateStyle extends XmlTemplate.Step {
+
+    private static final ChatColor[] NO_STYLES = new ChatColor[0];
+
+    private String clickEvent, hoverEvent, link;
+    private CompiledFormat clickEventData, hoverEventData;
+    private ChatColor color;
+    private ChatColor[] styles = NO_STYLES;
+
+    TemplateStyle() {
+    }
+
+    /**
+     * Sets the click event of this style.
+     *
+     * @param function click event in the {@code name('data')} syntax, the data may contain format specifiers
+     * @throws IllegalArgumentException thrown if the {@code function} syntax is invalid
+     */
+    public void onClick(String function) throws IllegalArgumentException {
+        int open = function(function, "onClick");
+        clickEvent = function.substring(0, open);
+        clickEventData = CompiledFormat.compile(function.substring(open + 2, function.length() - 2));
+    }
+
+    /**
+     * Sets the hover event of this style.
+     *
+     * @param function hover event in the {@code name('data')} syntax, the data may contain format specifiers
+     * @throws IllegalArgumentException thrown if the {@code function} syntax is invalid
+     */
+    public void onHover(String function) throws IllegalArgumentException {
+        int open = function(function, "onHover");
+        hoverEvent = function.substring(0, open);
+        hoverEventData = CompiledFormat.compile(function.substring(open + 2, function.length() - 2));
+    }
+
+    /**
+     * Sets the link of this style, replacing any click event.
+     *
+     * @param url url to open
+     */
+    public void link(String url) {
+        this.link = url;
+    }
+
+    /**
+     * Sets the {@link ChatColor} of this style.
+     *
+     * @param color color to set
+     */
+    public void color(ChatColor color) {
+        this.color = color;
+    }
+
+    /**
+     * Adds styles to this style.
+     *
+     * @param styles styles to add
+     */
+    public void style(ChatColor... styles) {
+        Validate.notNull(styles, "styles cannot be null.");
+        ChatColor[] merged = new ChatColor[this.styles.length + styles.length];
+        System.arraycopy(this.styles, 0, merged, 0, this.styles.length);
+        System.arraycopy(styles, 0, merged, this.styles.length, styles.length);
+        this.styles = merged;
+    }
+
+    @Override
+    void apply(FancyMessage fancyMessage, Object[] params) {
+        if (clickEvent != null) {
+            fancyMessage.onClick(clickEvent, clickEventData.format(params));
+        }
+        if (hoverEvent != null) {
+            fancyMessage.onHover(hoverEvent, hoverEventData.format(params));
+        }
+        if (link != null) {
+            fancyMessage.link(link);
+        }
+        if (color != null) {
+            fancyMessage.color(color);
+        }
+        if (styles.length > 0) {
+            fancyMessage.style(styles);
+        }
+    }
+
+    @Override
+    int arity() {
+        int arity = 0;
+        if (clickEvent != null) {
+            arity = merge(arity, arity(clickEventData));
+        }
+        if (hoverEvent != null) {
+            arity = merge(arity, arity(hoverEventData));
+        }
+        if (link != null && hasSlotMarker(link)) {
+            arity = -1;
+        }
+        return arity;
+    }
+
+    @Override
+    void write(DataOutput out, StringEncoder strings) throws IOException {
+        out.writeByte(XmlTemplate.STYLE_STEP);
+        strings.writeString(clickEvent);
+        strings.writeString(clickEvent == null ? null : clickEventData.getPattern());
+        strings.writeString(hoverEvent);
+        strings.writeString(hoverEvent == null ? null : hoverEventData.getPattern());
+        strings.writeString(link);
+        out.writeChar(color == null ? 0 : color.getChar());
+        out.writeShort(styles.length);
+        for (ChatColor style : styles) {
+            out.writeChar(style.getChar());
+        }
+    }
+
+    /**
+     * Reads the fields written by {@link #write(DataOutput, StringEncoder)} into this style.
+     */
+    void read(DataInput in, StringDecoder strings) throws IOException {
+        clickEvent = strings.readString();
+        String clickPattern = strings.readString();
+        hoverEvent = strings.readString();
+        String hoverPattern = strings.readString();
+        if ((clickEvent == null) != (clickPattern == null) || (hoverEvent == null) != (hoverPattern == null)) {
+            throw new IOException("Malformed style events.");
+        }
+        clickEventData = clickPattern == null ? null : CompiledFormat.compile(clickPattern);
+        hoverEventData = hoverPattern == null ? null : CompiledFormat.compile(hoverPattern);
+        link = strings.readString();
+        char colorCode = in.readChar();
+        color = colorCode == 0 ? null : chatColor(colorCode);
+        styles = new ChatColor[in.readUnsignedShort()];
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = chatColor(in.readChar());
+        }
+    }
+
+    private static ChatColor chatColor(char code) throws IOException {
+        ChatColor color = ChatColor.getByChar(code);
+        if (color == null) {
+            throw new IOException("Malformed color code " + code + ".");
+        }
+        return color;
+    }
+
+    private static int merge(int arity, int other) {
+        return arity < 0 || other < 0 ? -1 : Math.max(arity, other);
+    }
+
+    /**
+     * Validates the {@code name('data')} syntax of a chat event and returns the index of its opening parenthesis.
+     */
+    private static int function(String event, String attribute) {
+        int open = event.indexOf('(');
+        int end = event.length() - 2;
+        if (open <= 0 || end < open + 2 || !event.startsWith("('", open) || !event.startsWith("')", end)) {
+            throw new IllegalArgumentException(attribute + " syntax is invalid ('" + event + "')");
+        }
+        for (int i = open + 2; i < end; i++) {
+            char c = event.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                throw new IllegalArgumentException(attribute + " syntax is invalid ('" + event + "')");
+            }
+        }
+        return open;
+    }
+}
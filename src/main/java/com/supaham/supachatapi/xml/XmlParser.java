@@ -1,26 +1,101 @@
 package com.supaham.supachatapi.xml;
 
+import com.supaham.supachatapi.BatchParser;
 import com.supaham.supachatapi.Parser;
+import com.supaham.supachatapi.fanciful.BroadcastResult;
 import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.util.ChatMetrics;
+import com.supaham.supachatapi.util.LruCache;
+import org.apache.commons.lang.Validate;
+import org.bukkit.entity.Player;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Represents an XML implementation of {@link Parser}.
+ * <p/>
+ * Sources are compiled into {@link XmlTemplate}s once and kept in a bounded cache, so parsing the same source again
+ * only substitutes the params. Both text and onClick/onHover data may contain {@code %s}-style placeholders, see
+ * {@link XmlTemplate}.
  */
-public class XmlParser implements Parser {
+public class XmlParser implements BatchParser {
+
+    /**
+     * The default amount of compiled templates to keep cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    private final LruCache<String, XmlTemplate> cache;
+
+    public XmlParser() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a new XmlParser.
+     *
+     * @param cacheSize maximum amount of compiled templates to keep cached
+     */
+    public XmlParser(int cacheSize) {
+        this.cache = new LruCache<String, XmlTemplate>(cacheSize);
+    }
 
     @Override
     public FancyMessage parse(String source, Object... params) throws JAXBException {
-        source = "<span>" + source + "</span>";
+        ChatMetrics metrics = ChatMetrics.getGlobal();
+        long start = metrics.start();
+        boolean parsed = false;
+        try {
+            FancyMessage fancyMessage = compile(source).render(params);
+            parsed = true;
+            return fancyMessage;
+        } finally {
+            metrics.stop(ChatMetrics.Operation.PARSE, start, !parsed);
+        }
+    }
+
+    @Override
+    public Map<Player, List<Object>> renderBatch(String source, Iterable<? extends Player> recipients,
+                                                 RecipientParams params) throws JAXBException {
+        return compile(source).renderBatch(recipients, params);
+    }
+
+    @Override
+    public BroadcastResult sendBatch(String source, Iterable<? extends Player> recipients, RecipientParams params)
+            throws JAXBException {
+        return compile(source).sendBatch(recipients, params);
+    }
+
+    /**
+     * Compiles a source into an {@link XmlTemplate}, reusing a cached template if this source was compiled before.
+     *
+     * @param source source to compile
+     * @return the compiled template
+     * @throws JAXBException thrown if the {@code source} is not valid
+     */
+    public XmlTemplate compile(String source) throws JAXBException {
+        Validate.notNull(source, "source cannot be null.");
+        XmlTemplate template = cache.get(source);
+        ChatMetrics.getGlobal().recordCache(ChatMetrics.Cache.TEMPLATE, template != null);
+        if (template == null) {
+            Unmarshaller unmarshaller = Jaxb.UNMARSHALLER.get();
+            Element tag = (Element) unmarshaller.unmarshal(new StringReader("<span>" + source + "</span>"));
+            template = tag.compile(source);
+            cache.put(source, template);
+        }
+        return template;
+    }
 
-        JAXBContext context = JAXBContext.newInstance(Element.class);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
-        Element tag = (Element) unmarshaller.unmarshal(new StringReader(source));
-        return tag.getFancyMessage();
+    /**
+     * Removes all compiled templates from this parser's cache.
+     */
+    public void clearCache() {
+        cache.clear();
     }
 
     /**
@@ -37,4 +112,32 @@ public class XmlParser implements Parser {
                 .replace(">", "&gt;");
         return s;
     }
+
+    /**
+     * Lazily creates the shared {@link JAXBContext}, which is thread-safe, and one {@link Unmarshaller} per thread,
+     * which are not.
+     */
+    private static final class Jaxb {
+
+        private static final JAXBContext CONTEXT;
+
+        static {
+            try {
+                CONTEXT = JAXBContext.newInstance(Element.class);
+            } catch (JAXBException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private static final ThreadLocal<Unmarshaller> UNMARSHALLER = new ThreadLocal<Unmarshaller>() {
+            @Override
+            protected Unmarshaller initialValue() {
+                try {
+                    return CONTEXT.createUnmarshaller();
+                } catch (JAXBException e) {
+                    throw new IllegalStateException("could not create unmarshaller", e);
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,381 @@
+package com.supaham.supachatapi.xml;
+
+import com.supaham.supachatapi.BatchParser;
+import com.supaham.supachatapi.fanciful.BroadcastResult;
+import com.supaham.supachatapi.fanciful.FancyMessage;
+import com.supaham.supachatapi.fanciful.PacketTemplate;
+import com.supaham.supachatapi.util.ByteBufferInputStream;
+import com.supaham.supachatapi.util.CompiledFormat;
+import com.supaham.supachatapi.util.LruCache;
+import com.supaham.supachatapi.util.StringDecoder;
+import com.supaham.supachatapi.util.StringEncoder;
+import org.apache.commons.lang.Validate;
+import org.bukkit.entity.Player;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents an immutable, compiled XML template. Rendering a template does not parse any XML, it only replays the
+ * compiled steps and substitutes the given params into their {@link CompiledFormat} slots.
+ * <p/>
+ * The onClick/onHover data are formats, as with {@link String#format(String, Object...)}. Text is only formatted when
+ * params are given, and then only its {@code %s}, {@code %d}, {@code %n$s} and {@code %n$d} slots are substituted,
+ * every other {@code %} is kept as written. See {@link CompiledFormat#compileSlots(String)}.
+ * <p/>
+ * Templates that only use {@code %s}-style slots are also compiled into a {@link PacketTemplate} on first render, so
+ * serializing a rendered message only escapes the params, and rendering it for many recipients only escapes the params
+ * of every recipient, see {@link #renderBatch(Iterable, BatchParser.RecipientParams)}.
+ *
+ * @see XmlParser#compile(String)
+ * @see StreamingXmlParser#compile(String)
+ */
+public final class XmlTemplate {
+
+    static final int TEXT_STEP = 0, STYLE_STEP = 1;
+
+    private final String source;
+    private final Step[] steps;
+    private final int arity; // -1 if this template can not be compiled into a PacketTemplate.
+    private volatile Fragments fragments;
+
+    XmlTemplate(String source, List<Step> steps) {
+        this.source = source;
+        this.steps = steps.toArray(new Step[steps.size()]);
+        int arity = 0;
+        for (Step step : this.steps) {
+            int stepArity = step.arity();
+            if (stepArity < 0) {
+                arity = -1;
+                break;
+            }
+            arity = Math.max(arity, stepArity);
+        }
+        this.arity = arity <= PacketTemplate.MAX_SLOTS ? arity : -1;
+    }
+
+    /**
+     * Renders this template into a new {@link FancyMessage}. If this template only uses {@code %s}-style slots, the
+     * JSON of the message is spliced together from precomputed fragments and the escaped params.
+     *
+     * @param params params to replace
+     * @return a new instance of FancyMessage
+     */
+    public FancyMessage render(Object... params) {
+        Fragments fragments = getFragments(params);
+        if (fragments != null) {
+            String[] values = fragments.values(params);
+            return fragments.template(values).toFancyMessage(values);
+        }
+        return replay(params);
+    }
+
+    private FancyMessage replay(Object[] params) {
+        FancyMessage fancyMessage = new FancyMessage();
+        for (Step step : steps) {
+            fancyMessage.then();
+            step.apply(fancyMessage, params);
+        }
+        return fancyMessage;
+    }
+
+    /**
+     * Renders this template for many recipients, each with their own params. Recipients with equal params share their
+     * packets, and if this template only uses {@code %s}-style slots, its JSON is serialized once and only the params
+     * are escaped for every recipient. All packets are created before this method returns, so if rendering fails for
+     * any recipient, no packets are returned at all.
+     *
+     * @param recipients players to render this template for
+     * @param params     params of every recipient
+     * @return the NMS PacketPlayOutChat of every recipient, in iteration order
+     * @throws IllegalStateException thrown if a message exceeds the {@link com.supaham.supachatapi.fanciful.SizeLimit}
+     */
+    public Map<Player, List<Object>> renderBatch(Iterable<? extends Player> recipients,
+                                                 BatchParser.RecipientParams params) throws IllegalStateException {
+        Validate.notNull(recipients, "recipients cannot be null.");
+        Validate.notNull(params, "params cannot be null.");
+        Map<Player, List<Object>> packets = new LinkedHashMap<Player, List<Object>>();
+        Map<List<Object>, List<Object>> rendered = new HashMap<List<Object>, List<Object>>();
+        for (Player recipient : recipients) {
+            Object[] recipientParams = params.getParams(recipient);
+            List<Object> key = recipientParams == null ? null : Arrays.asList(recipientParams);
+            List<Object> recipientPackets = rendered.get(key);
+            if (recipientPackets == null) {
+                Fragments fragments = getFragments(recipientParams);
+                if (fragments == null) {
+                    recipientPackets = render(recipientParams).freeze().getPackets();
+                } else {
+                    String[] values = fragments.values(recipientParams);
+                    recipientPackets = fragments.template(values).createPackets(values);
+                }
+                rendered.put(key, recipientPackets);
+            }
+            packets.put(recipient, recipientPackets);
+        }
+        return packets;
+    }
+
+    /**
+     * Renders this template for many recipients, each with their own params, and sends it to them.
+     *
+     * @param recipients players to send this template to
+     * @param params     params of every recipient
+     * @return the result of the broadcast
+     * @throws IllegalStateException thrown if a message exceeds the {@link com.supaham.supachatapi.fanciful.SizeLimit}
+     * @see #renderBatch(Iterable, BatchParser.RecipientParams)
+     */
+    public BroadcastResult sendBatch(Iterable<? extends Player> recipients, BatchParser.RecipientParams params)
+            throws IllegalStateException {
+        return FancyMessage.broadcast(renderBatch(recipients, params));
+    }
+
+    /**
+     * Gets the fragments to splice the JSON of a render together from, or null if the steps have to be replayed.
+     */
+    private Fragments getFragments(Object[] params) {
+        if (arity < 0 || (arity > 0 && !hasParams(params))) {
+            return null; // Text with slots is kept as written without params, which the fragments can not splice.
+        }
+        Fragments fragments = this.fragments;
+        if (fragments == null) {
+            // Racing threads may each create the fragments, only one of which is kept.
+            this.fragments = fragments = new Fragments(arity);
+        }
+        return fragments;
+    }
+
+    private static boolean hasParams(Object[] params) {
+        return params != null && params.length > 0;
+    }
+
+    /**
+     * Gets the source this template was compiled from.
+     *
+     * @return source of this template, or null if it was loaded from a {@link TemplateBundle}
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Writes the compiled steps of this template, without its source. The Strings of the steps are written with their
+     * own {@link StringEncoder}, so that the template can be read on its own.
+     *
+     * @see #read(ByteBuffer)
+     */
+    void write(DataOutput out) throws IOException {
+        StringEncoder strings = new StringEncoder(out);
+        strings.writeVarInt(steps.length);
+        for (Step step : steps) {
+            step.write(out, strings);
+        }
+    }
+
+    /**
+     * Reads a template written by {@link #write(DataOutput)}. Only the formats of the steps are compiled again, no XML
+     * is parsed.
+     *
+     * @throws IOException thrown if the steps are malformed
+     */
+    static XmlTemplate read(ByteBuffer buffer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+        StringDecoder strings = new StringDecoder(in, true);
+        try {
+            Builder builder = new Builder();
+            int size = strings.readVarInt();
+            for (int i = 0; i < size; i++) {
+                int type = in.readByte();
+                if (type == TEXT_STEP) {
+                    builder.text(strings.readString());
+                } else if (type == STYLE_STEP) {
+                    builder.style().read(in, strings);
+                } else {
+                    throw new IOException("Malformed step type " + type + ".");
+                }
+            }
+            return builder.build(null);
+        } catch (EOFException e) {
+            throw new IOException("Truncated template.", e);
+        }
+    }
+
+    /**
+     * Represents a single step of a template. Each step is applied to a new part, unless the latest part has no text
+     * yet.
+     */
+    abstract static class Step {
+
+        abstract void apply(FancyMessage fancyMessage, Object[] params);
+
+        /**
+         * Gets one more than the highest param index this step substitutes, or -1 if this step can not be compiled into
+         * a {@link PacketTemplate}.
+         */
+        abstract int arity();
+
+        /**
+         * Writes this step, starting with its type, so that {@link XmlTemplate#read(ByteBuffer)} can build it again.
+         */
+        abstract void write(DataOutput out, StringEncoder strings) throws IOException;
+
+        static int arity(CompiledFormat format) {
+            return hasSlotMarker(format.getPattern()) ? -1 : format.getStringArity();
+        }
+
+        /**
+         * Checks whether a constant String contains a character that {@link PacketTemplate} would take as a slot.
+         */
+        static boolean hasSlotMarker(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= '\uE000' && c <= '\uF8FF') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Holds the {@link PacketTemplate}s of a template, and the formats of its slot values.
+     * <p/>
+     * A part whose text is empty takes on the style of the next step, so the structure of a message depends on which
+     * params are empty. There is one PacketTemplate for every combination of empty params, which in practice is one or
+     * two.
+     */
+    private final class Fragments {
+
+        private final CompiledFormat[] slots;
+        private final PacketTemplate nonEmpty;
+        private final LruCache<BitSet, PacketTemplate> withEmpty = new LruCache<BitSet, PacketTemplate>(16);
+
+        private Fragments(int arity) {
+            slots = new CompiledFormat[arity];
+            for (int i = 0; i < arity; i++) {
+                slots[i] = CompiledFormat.compile("%" + (i + 1) + "$s");
+            }
+            nonEmpty = compile(new BitSet(0));
+        }
+
+        private String[] values(Object[] params) {
+            String[] values = new String[slots.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = slots[i].format(params);
+            }
+            return values;
+        }
+
+        private PacketTemplate template(String[] values) {
+            BitSet empty = null;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i].isEmpty()) {
+                    if (empty == null) {
+                        empty = new BitSet(values.length);
+                    }
+                    empty.set(i);
+                }
+            }
+            if (empty == null) {
+                return nonEmpty;
+            }
+            PacketTemplate template = withEmpty.get(empty);
+            if (template == null) {
+                template = compile(empty);
+                withEmpty.put(empty, template);
+            }
+            return template;
+        }
+
+        private PacketTemplate compile(BitSet empty) {
+            Object[] markers = new Object[slots.length];
+            for (int i = 0; i < markers.length; i++) {
+                markers[i] = empty.get(i) ? "" : PacketTemplate.slot(i);
+            }
+            return PacketTemplate.compile(replay(markers));
+        }
+    }
+
+    /**
+     * Represents a step that sets the text of a part from a format.
+     */
+    private abstract static class TextStep extends Step {
+
+        private final String pattern;
+        private final int arity;
+
+        private TextStep(String pattern, int arity) {
+            this.pattern = pattern;
+            this.arity = arity;
+        }
+
+        @Override
+        int arity() {
+            return arity;
+        }
+
+        @Override
+        void write(DataOutput out, StringEncoder strings) throws IOException {
+            out.writeByte(TEXT_STEP);
+            strings.writeString(pattern);
+        }
+    }
+
+    /**
+     * Collects the steps of a template in document order.
+     */
+    static final class Builder {
+
+        private final List<Step> steps = new ArrayList<Step>();
+
+        /**
+         * Adds a text step.
+         *
+         * @param text text format
+         */
+        void text(final String text) {
+            final CompiledFormat format = CompiledFormat.compileSlots(text);
+            final int arity = Step.arity(format);
+            if (format.isConstant()) {
+                steps.add(new TextStep(text, arity) {
+                    @Override
+                    void apply(FancyMessage fancyMessage, Object[] params) {
+                        fancyMessage.text(text);
+                    }
+                });
+            } else {
+                steps.add(new TextStep(text, arity) {
+                    @Override
+                    void apply(FancyMessage fancyMessage, Object[] params) {
+                        // Like before templates were compiled, text is kept as written when there are no params.
+                        fancyMessage.text(hasParams(params) ? format.format(params) : text);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Adds a style step, which the caller then fills in.
+         *
+         * @return the added style
+         */
+        TemplateStyle style() {
+            TemplateStyle style = new TemplateStyle();
+            steps.add(style);
+            return style;
+        }
+
+        XmlTemplate build(String source) {
+            return new XmlTemplate(source, steps);
+        }
+    }
+}
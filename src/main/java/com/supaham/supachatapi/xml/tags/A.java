@@ -1,7 +1,7 @@
 package com.supaham.supachatapi.xml.tags;
 
-import com.supaham.supachatapi.fanciful.FancyMessage;
 import com.supaham.supachatapi.xml.Element;
+import com.supaham.supachatapi.xml.TemplateStyle;
 
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -12,8 +12,8 @@ public class A extends Element {
     private String href;
 
     @Override
-    protected void modifyStyle(FancyMessage fancyMessage, Object... params) {
-        super.modifyStyle(fancyMessage, params);
-        fancyMessage.link(href);
+    protected void compileStyle(TemplateStyle style) {
+        super.compileStyle(style);
+        style.link(href);
     }
 }
@@ -1,7 +1,7 @@
 package com.supaham.supachatapi.xml.tags;
 
-import com.supaham.supachatapi.fanciful.FancyMessage;
 import com.supaham.supachatapi.xml.Element;
+import com.supaham.supachatapi.xml.TemplateStyle;
 import org.apache.commons.lang.Validate;
 import org.bukkit.ChatColor;
 
@@ -15,17 +15,17 @@ public class Color extends Element {
     private String id;
 
     @Override
-    protected void modifyStyle(FancyMessage fancyMessage, Object... params) {
+    protected void compileStyle(TemplateStyle style) {
         if (id.isEmpty()) {
             throw new IllegalArgumentException("id can not be empty.");
         }
-        super.modifyStyle(fancyMessage, params);
+        super.compileStyle(style);
         ChatColor color =
                 id.length() == 1 ? ChatColor.getByChar(id.toLowerCase()) : ChatColor.valueOf(id.toUpperCase());
         
         Validate.notNull(color, id + " is not a valid color");
         Validate.isTrue(!color.isFormat(), id + " is not a color, its a style.");
         
-        fancyMessage.color(color);
+        style.color(color);
     }
 }
@@ -1,7 +1,7 @@
 package com.supaham.supachatapi.xml.tags;
 
-import com.supaham.supachatapi.fanciful.FancyMessage;
 import com.supaham.supachatapi.xml.Element;
+import com.supaham.supachatapi.xml.TemplateStyle;
 import org.bukkit.ChatColor;
 
 import javax.xml.bind.annotation.XmlRootElement;
@@ -9,8 +9,8 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlRootElement
 public class S extends Element {
     @Override
-    protected void modifyStyle(FancyMessage fancyMessage, Object... params) {
-        super.modifyStyle(fancyMessage, params);
-        fancyMessage.style(ChatColor.STRIKETHROUGH);
+    protected void compileStyle(TemplateStyle style) {
+        super.compileStyle(style);
+        style.style(ChatColor.STRIKETHROUGH);
     }
 }
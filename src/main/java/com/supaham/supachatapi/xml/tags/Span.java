@@ -1,14 +1,14 @@
 package com.supaham.supachatapi.xml.tags;
 
-import com.supaham.supachatapi.fanciful.FancyMessage;
 import com.supaham.supachatapi.xml.Element;
+import com.supaham.supachatapi.xml.TemplateStyle;
 
 import javax.xml.bind.annotation.XmlRootElement;
 
 @XmlRootElement
 public class Span extends Element {
     @Override
-    protected void modifyStyle(FancyMessage fancyMessage, Object... params) {
-        super.modifyStyle(fancyMessage, params);
+    protected void compileStyle(TemplateStyle style) {
+        super.compileStyle(style);
     }
 }
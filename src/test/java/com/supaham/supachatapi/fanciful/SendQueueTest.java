@@ -0,0 +1,108 @@
+package com.supaham.supachatapi.fanciful;
+
+import net.minecraft.server.vtest.EntityPlayer;
+import net.minecraft.server.vtest.PlayerConnection;
+import org.bukkit.craftbukkit.vtest.entity.CraftPlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SendQueueTest {
+
+    private static final String BALANCE = new FancyMessage("Balance: $10").toJSONString();
+
+    private SendQueue queue;
+    private EntityPlayer handle;
+    private Player player;
+
+    @Before
+    public void setUp() {
+        queue = new SendQueue(plugin(), SendQueue.DEFAULT_BUDGET, SendQueue.DEFAULT_CAPACITY,
+                              SendQueue.DEFAULT_MAX_MERGED);
+        handle = new EntityPlayer();
+        player = player(handle);
+    }
+
+    @Test
+    public void sendsTheSameMessageOnSeparateTicks() {
+        queue.enqueue(player, new FancyMessage("Balance: $10"));
+        queue.drain();
+        queue.enqueue(player, new FancyMessage("Balance: $10"));
+        queue.drain();
+
+        assertEquals(Arrays.asList(BALANCE, BALANCE), sent());
+        assertEquals(0, queue.getDeduplicated());
+    }
+
+    @Test
+    public void dropsTheSameMessageQueuedTwiceInARow() {
+        queue.enqueue(player, new FancyMessage("Balance: $10"));
+        queue.enqueue(player, new FancyMessage("Balance: $10"));
+        queue.drain();
+
+        assertEquals(Arrays.asList(BALANCE), sent());
+        assertEquals(1, queue.getDeduplicated());
+        assertEquals(0, queue.getQueued(player));
+    }
+
+    @Test
+    public void keepsMessagesQueuedUntilTheyAreSent() {
+        PlayerConnection connection = handle.playerConnection;
+        queue.enqueue(player, new FancyMessage("Balance: $10"));
+        handle.playerConnection = null;
+        queue.drain();
+        assertEquals(1, queue.getQueued(player));
+
+        handle.playerConnection = connection;
+        queue.drain();
+        assertEquals(Arrays.asList(BALANCE), sent());
+        assertEquals(0, queue.getQueued(player));
+    }
+
+    private List<String> sent() {
+        return handle.playerConnection.getSent();
+    }
+
+    private static Plugin plugin() {
+        return (Plugin) Proxy.newProxyInstance(SendQueueTest.class.getClassLoader(), new Class<?>[]{Plugin.class},
+                                               new InvocationHandler() {
+                                                   public Object invoke(Object proxy, Method method, Object[] args) {
+                                                       if (method.getName().equals("getLogger")) {
+                                                           return Logger.getLogger(SendQueueTest.class.getName());
+                                                       }
+                                                       throw new UnsupportedOperationException(method.getName());
+                                                   }
+                                               });
+    }
+
+    private static Player player(final EntityPlayer handle) {
+        return (Player) Proxy.newProxyInstance(SendQueueTest.class.getClassLoader(), new Class<?>[]{CraftPlayer.class},
+                                               new InvocationHandler() {
+                                                   public Object invoke(Object proxy, Method method, Object[] args) {
+                                                       String name = method.getName();
+                                                       if (name.equals("getHandle")) {
+                                                           return handle;
+                                                       } else if (name.equals("isOnline")) {
+                                                           return true;
+                                                       } else if (name.equals("getName") || name.equals("toString")) {
+                                                           return "player";
+                                                       } else if (name.equals("hashCode")) {
+                                                           return System.identityHashCode(proxy);
+                                                       } else if (name.equals("equals")) {
+                                                           return proxy == args[0];
+                                                       }
+                                                       throw new UnsupportedOperationException(name);
+                                                   }
+                                               });
+    }
+}
@@ -0,0 +1,17 @@
+package net.minecraft.server.vtest;
+
+/**
+ * Chat component returned by the {@link ChatSerializer} stub.
+ */
+public class ChatComponentStub implements IChatBaseComponent {
+
+    private final String json;
+
+    public ChatComponentStub(String json) {
+        this.json = json;
+    }
+
+    public String getJson() {
+        return json;
+    }
+}
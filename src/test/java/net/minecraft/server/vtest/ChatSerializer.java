@@ -0,0 +1,11 @@
+package net.minecraft.server.vtest;
+
+/**
+ * Stub of the NMS chat serializer. Does not parse the JSON.
+ */
+public class ChatSerializer {
+
+    public static IChatBaseComponent a(String json) {
+        return new ChatComponentStub(json);
+    }
+}
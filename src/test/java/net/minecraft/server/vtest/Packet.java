@@ -0,0 +1,7 @@
+package net.minecraft.server.vtest;
+
+/**
+ * Stub of the NMS packet base class.
+ */
+public abstract class Packet {
+}
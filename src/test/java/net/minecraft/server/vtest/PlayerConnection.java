@@ -0,0 +1,20 @@
+package net.minecraft.server.vtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stub of the NMS player connection. Keeps the JSON of every chat packet sent through it.
+ */
+public class PlayerConnection {
+
+    private final List<String> sent = new ArrayList<String>();
+
+    public void sendPacket(Packet packet) {
+        sent.add(((ChatComponentStub) ((PacketPlayOutChat) packet).getComponent()).getJson());
+    }
+
+    public List<String> getSent() {
+        return sent;
+    }
+}
@@ -0,0 +1,13 @@
+package org.bukkit.craftbukkit.vtest.entity;
+
+import net.minecraft.server.vtest.EntityPlayer;
+import org.bukkit.entity.Player;
+
+/**
+ * Stub of the OBC player. An interface, so that tests can implement it with a proxy instead of every method of
+ * {@link Player}.
+ */
+public interface CraftPlayer extends Player {
+
+    EntityPlayer getHandle();
+}